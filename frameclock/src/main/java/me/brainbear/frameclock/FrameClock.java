@@ -0,0 +1,114 @@
+package me.brainbear.frameclock;
+
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * 进程内共享的帧时钟，所有订阅者共用一个{@link Choreographer}回调，每个vsync按订阅顺序回调一次。
+ * <p>
+ * 订阅者在回调里根据帧时间计算动画进度，需要重绘时调用一次invalidate，
+ * 返回false表示已经没有动画，时钟会自动取消订阅，没有订阅者时不再向Choreographer注册回调。
+ * 只能在主线程使用。
+ */
+public final class FrameClock {
+
+    public interface OnFrameListener {
+        /**
+         * @param frameTimeNanos 这一帧的vsync时间，和System.nanoTime()是同一个时间基准
+         * @return 下一帧还需要回调时返回true，返回false后自动取消订阅
+         */
+        boolean onFrame(long frameTimeNanos);
+    }
+
+    private static FrameClock sInstance;
+
+    private final Choreographer mChoreographer;
+    /**
+     * 回调过程中取消订阅只把对应位置置空，回调结束后再统一清理
+     */
+    private final ArrayList<OnFrameListener> mListeners = new ArrayList<>();
+    private boolean mDispatching;
+    private boolean mScheduled;
+    private long mFrameTimeNanos;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mScheduled = false;
+            dispatchFrame(frameTimeNanos);
+        }
+    };
+
+    private FrameClock() {
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    public static FrameClock getInstance() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("FrameClock must be used on the main thread");
+        }
+        if (null == sInstance) {
+            sInstance = new FrameClock();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 订阅下一帧开始的回调，重复订阅不会重复回调
+     */
+    public void subscribe(OnFrameListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+        scheduleFrame();
+    }
+
+    public void unsubscribe(OnFrameListener listener) {
+        int index = mListeners.indexOf(listener);
+        if (index < 0) {
+            return;
+        }
+        if (mDispatching) {
+            mListeners.set(index, null);
+        } else {
+            mListeners.remove(index);
+        }
+    }
+
+    /**
+     * 最近一帧的vsync时间，还没有回调过时返回当前时间
+     */
+    public long getFrameTimeNanos() {
+        return 0 == mFrameTimeNanos ? System.nanoTime() : mFrameTimeNanos;
+    }
+
+    private void scheduleFrame() {
+        if (!mScheduled && !mListeners.isEmpty()) {
+            mScheduled = true;
+            mChoreographer.postFrameCallback(mFrameCallback);
+        }
+    }
+
+    private void dispatchFrame(long frameTimeNanos) {
+        mFrameTimeNanos = frameTimeNanos;
+        mDispatching = true;
+        //回调中新订阅的从下一帧开始
+        int size = mListeners.size();
+        for (int i = 0; i < size; i++) {
+            OnFrameListener listener = mListeners.get(i);
+            if (null != listener && !listener.onFrame(frameTimeNanos)) {
+                mListeners.set(i, null);
+            }
+        }
+        mDispatching = false;
+
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            if (null == mListeners.get(i)) {
+                mListeners.remove(i);
+            }
+        }
+        scheduleFrame();
+    }
+}
@@ -0,0 +1,195 @@
+package me.brainbear.frameclock;
+
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * 根据View的可见状态订阅或暂停{@link FrameClock}。
+ * <p>
+ * View不在窗口上、自己或者祖先不可见、窗口不可见、尺寸为0或者完全被裁剪掉时暂停，
+ * 暂停期间不订阅帧时钟，只在每次窗口重绘前检查一次是否可以恢复。
+ * 回调中的动画时间不包含暂停的时长，恢复后动画从暂停的位置继续，不会跳变。
+ * <p>
+ * View需要在onAttachedToWindow、onDetachedFromWindow、onVisibilityChanged、onWindowVisibilityChanged
+ * 和onSizeChanged中调用对应的方法。只能在主线程使用。
+ */
+public final class ViewFrameDriver {
+
+    public interface Callback {
+        /**
+         * @param animationTimeMillis 不包含暂停时长的动画时间
+         * @return 下一帧还需要回调时返回true，返回false后停止，直到再次调用{@link #start()}
+         */
+        boolean onAnimationFrame(long animationTimeMillis);
+
+        /**
+         * 开始或者停止回调，包括不可见导致的暂停和恢复
+         */
+        void onRunningChanged(boolean running);
+    }
+
+    private final View mView;
+    private final Callback mCallback;
+    private final Rect mVisibleRect = new Rect();
+
+    private boolean mAttached;
+    /**
+     * 有动画需要播放，暂停期间保持为true
+     */
+    private boolean mStarted;
+    private boolean mSubscribed;
+    private boolean mPreDrawRegistered;
+
+    /**
+     * 动画时间相对帧时间的偏移，也就是累计暂停的时长，单位ms。
+     * 动画时间从0开始，所以一开始当作在0时刻暂停
+     */
+    private long mPausedDuration;
+    private long mPausedAt = 0;
+    private long mAnimationTime;
+
+    private final FrameClock.OnFrameListener mFrameListener = new FrameClock.OnFrameListener() {
+        @Override
+        public boolean onFrame(long frameTimeNanos) {
+            if (!isVisibleForAnimation()) {
+                update();
+                return false;
+            }
+            mAnimationTime = frameTimeNanos / 1000000 - mPausedDuration;
+            if (!mCallback.onAnimationFrame(mAnimationTime)) {
+                //停止的时间也不计入动画时间
+                mStarted = false;
+                mSubscribed = false;
+                mPausedAt = mAnimationTime;
+                mCallback.onRunningChanged(false);
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private final ViewTreeObserver.OnPreDrawListener mPreDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            update();
+            return true;
+        }
+    };
+
+    public ViewFrameDriver(View view, Callback callback) {
+        mView = view;
+        mCallback = callback;
+    }
+
+    /**
+     * 开始播放动画，不可见时等到可见后再开始回调
+     */
+    public void start() {
+        mStarted = true;
+        update();
+    }
+
+    public void stop() {
+        mStarted = false;
+        update();
+    }
+
+    public boolean isRunning() {
+        return mSubscribed;
+    }
+
+    /**
+     * 当前的动画时间，不包含暂停时长，暂停期间保持不变
+     */
+    public long getAnimationTime() {
+        return mAnimationTime;
+    }
+
+    public void onAttachedToWindow() {
+        mAttached = true;
+        update();
+    }
+
+    public void onDetachedFromWindow() {
+        //这时View仍然认为自己在窗口上，直接暂停
+        mAttached = false;
+        pause();
+        unregisterPreDraw();
+    }
+
+    public void onVisibilityChanged() {
+        update();
+    }
+
+    public void onWindowVisibilityChanged() {
+        update();
+    }
+
+    public void onSizeChanged() {
+        update();
+    }
+
+    /**
+     * 根据当前状态订阅或者暂停
+     */
+    private void update() {
+        boolean visible = mAttached && isVisibleForAnimation();
+        if (mStarted && visible) {
+            resume();
+        } else {
+            pause();
+        }
+        //暂停中还有动画需要播放时，等窗口重绘时再检查一次，比如滚动回到屏幕内
+        if (mAttached && mStarted && !visible) {
+            registerPreDraw();
+        } else {
+            unregisterPreDraw();
+        }
+    }
+
+    private boolean isVisibleForAnimation() {
+        return mView.getWindowVisibility() == View.VISIBLE
+                && mView.isShown()
+                && mView.getWidth() > 0 && mView.getHeight() > 0
+                && mView.getGlobalVisibleRect(mVisibleRect);
+    }
+
+    private void resume() {
+        if (mSubscribed) {
+            return;
+        }
+        if (mPausedAt >= 0) {
+            //下一帧的动画时间从暂停的位置继续
+            mPausedDuration = System.nanoTime() / 1000000 - mPausedAt;
+            mPausedAt = -1;
+        }
+        mSubscribed = true;
+        FrameClock.getInstance().subscribe(mFrameListener);
+        mCallback.onRunningChanged(true);
+    }
+
+    private void pause() {
+        if (!mSubscribed) {
+            return;
+        }
+        mSubscribed = false;
+        mPausedAt = mAnimationTime;
+        FrameClock.getInstance().unsubscribe(mFrameListener);
+        mCallback.onRunningChanged(false);
+    }
+
+    private void registerPreDraw() {
+        if (!mPreDrawRegistered) {
+            mPreDrawRegistered = true;
+            mView.getViewTreeObserver().addOnPreDrawListener(mPreDrawListener);
+        }
+    }
+
+    private void unregisterPreDraw() {
+        if (mPreDrawRegistered) {
+            mPreDrawRegistered = false;
+            mView.getViewTreeObserver().removeOnPreDrawListener(mPreDrawListener);
+        }
+    }
+}
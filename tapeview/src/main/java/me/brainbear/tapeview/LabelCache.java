@@ -0,0 +1,79 @@
+package me.brainbear.tapeview;
+
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * 刻度文字缓存，按数值保存格式化后的文字和测量出的宽度。
+ * 容量固定，满了以后淘汰最久没有用到的一项，命中时不产生任何对象分配。
+ */
+final class LabelCache {
+
+    private final long[] mValues;
+    private final String[] mLabels;
+    private final int[] mWidths;
+    /**
+     * 每一项最后一次被使用的时间戳，用来找出最久未使用的项
+     */
+    private final long[] mStamps;
+    private final Rect mBounds = new Rect();
+    private int mSize;
+    private long mClock;
+
+    LabelCache(int capacity) {
+        mValues = new long[capacity];
+        mLabels = new String[capacity];
+        mWidths = new int[capacity];
+        mStamps = new long[capacity];
+    }
+
+    /**
+     * 查找数值对应的缓存项，没有命中时格式化并测量后放入缓存
+     *
+     * @return 缓存项的下标，配合 {@link #getLabel(int)} 和 {@link #getWidth(int)} 使用
+     */
+    int obtain(long value, Paint paint, TapeView.LabelFormatter formatter) {
+        mClock++;
+
+        int eldest = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (mValues[i] == value) {
+                mStamps[i] = mClock;
+                return i;
+            }
+            if (mStamps[i] < mStamps[eldest]) {
+                eldest = i;
+            }
+        }
+
+        int slot = mSize < mValues.length ? mSize++ : eldest;
+
+        String label = formatter.format(value);
+        paint.getTextBounds(label, 0, label.length(), mBounds);
+
+        mValues[slot] = value;
+        mLabels[slot] = label;
+        mWidths[slot] = mBounds.width();
+        mStamps[slot] = mClock;
+        return slot;
+    }
+
+    String getLabel(int slot) {
+        return mLabels[slot];
+    }
+
+    int getWidth(int slot) {
+        return mWidths[slot];
+    }
+
+    /**
+     * 文字大小、字体或者格式化方式变化后需要清空
+     */
+    void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mLabels[i] = null;
+        }
+        mSize = 0;
+        mClock = 0;
+    }
+}
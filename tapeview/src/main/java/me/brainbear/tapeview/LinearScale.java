@@ -0,0 +1,101 @@
+package me.brainbear.tapeview;
+
+/**
+ * 等间距的刻度，第index个刻度的数值为min + index * step，范围可以很大，不需要额外的内存
+ */
+public final class LinearScale implements TapeScale {
+
+    private final long mMinValue;
+    private final long mStep;
+    private final long mMaxIndex;
+    private final int mMajorInterval;
+
+    /**
+     * @param min           最小值，必须是step的整数倍，长刻度落在step * majorInterval的整数倍上
+     * @param max           最大值，会向下取整到最后一个刻度
+     * @param step          相邻两个刻度的数值差
+     * @param majorInterval 每隔多少个刻度画一个长刻度和文字
+     */
+    public LinearScale(long min, long max, long step, int majorInterval) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must be positive: " + step);
+        }
+        if (max < min) {
+            throw new IllegalArgumentException("max " + max + " is less than min " + min);
+        }
+        if (min % step != 0) {
+            throw new IllegalArgumentException("min " + min + " is not a multiple of step " + step);
+        }
+        if (majorInterval <= 0) {
+            throw new IllegalArgumentException("majorInterval must be positive: " + majorInterval);
+        }
+        mMinValue = min;
+        mStep = step;
+        mMaxIndex = (max - min) / step;
+        mMajorInterval = majorInterval;
+    }
+
+    public long getMinValue() {
+        return mMinValue;
+    }
+
+    public long getMaxValue() {
+        return getValue(mMaxIndex);
+    }
+
+    public long getStep() {
+        return mStep;
+    }
+
+    @Override
+    public long getMaxIndex() {
+        return mMaxIndex;
+    }
+
+    @Override
+    public long getValue(long index) {
+        return mMinValue + index * mStep;
+    }
+
+    @Override
+    public long indexOf(long value) {
+        if (value <= mMinValue) {
+            return 0;
+        }
+        long offset = value - mMinValue;
+        long index = offset / mStep;
+        if ((offset % mStep) * 2 >= mStep) {
+            index++;
+        }
+        return Math.min(index, mMaxIndex);
+    }
+
+    @Override
+    public double getPosition(long index) {
+        return index;
+    }
+
+    @Override
+    public long getIndexAt(double position) {
+        if (position <= 0) {
+            return 0;
+        }
+        return Math.min(mMaxIndex, (long) position);
+    }
+
+    @Override
+    public long getAlignment(long index) {
+        //按数值对齐，长刻度总是落在step * majorInterval的整数倍上，和min无关
+        return mMinValue / mStep + index;
+    }
+
+    @Override
+    public int getMajorInterval() {
+        return mMajorInterval;
+    }
+
+    @Override
+    public double getMinGap() {
+        return 1;
+    }
+}
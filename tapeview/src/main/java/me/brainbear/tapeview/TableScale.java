@@ -0,0 +1,156 @@
+package me.brainbear.tapeview;
+
+import java.util.Arrays;
+
+/**
+ * 按表格给出的刻度，每个刻度的数值和位置都预先算好，适合间距不均匀的刻度，例如对数刻度、预设尺码或者价格档位。
+ * 刻度到数值和位置通过数组下标O(1)得到，数值到刻度和位置到刻度通过二分查找得到，查询时不分配对象
+ */
+public final class TableScale implements TapeScale {
+
+    private final long[] mValues;
+    private final double[] mPositions;
+    private final int mMajorInterval;
+    private final double mMinGap;
+
+    /**
+     * @param values        每个刻度的数值，严格递增
+     * @param positions     每个刻度的位置，以没有缩放时的刻度间距为单位，严格递增
+     * @param majorInterval 每隔多少个刻度画一个长刻度和文字，从第0个刻度开始
+     */
+    public TableScale(long[] values, double[] positions, int majorInterval) {
+        if (values.length == 0 || values.length != positions.length) {
+            throw new IllegalArgumentException("values and positions must be non-empty and of the same length");
+        }
+        if (majorInterval <= 0) {
+            throw new IllegalArgumentException("majorInterval must be positive: " + majorInterval);
+        }
+        mValues = Arrays.copyOf(values, values.length);
+        mPositions = new double[positions.length];
+        mMajorInterval = majorInterval;
+
+        //第0个刻度的位置移到0
+        double minGap = Double.MAX_VALUE;
+        for (int i = 0; i < positions.length; i++) {
+            mPositions[i] = positions[i] - positions[0];
+            if (i > 0) {
+                if (mValues[i] <= mValues[i - 1] || mPositions[i] <= mPositions[i - 1]) {
+                    throw new IllegalArgumentException("values and positions must be strictly increasing at " + i);
+                }
+                minGap = Math.min(minGap, mPositions[i] - mPositions[i - 1]);
+            }
+        }
+        mMinGap = positions.length > 1 ? minGap : 1;
+    }
+
+    /**
+     * 刻度的位置和数值成正比，平均间距为1
+     */
+    public static TableScale proportional(long[] values, int majorInterval) {
+        double[] positions = new double[values.length];
+        if (values.length > 1) {
+            double range = (double) values[values.length - 1] - values[0];
+            for (int i = 0; i < values.length; i++) {
+                positions[i] = (values[i] - values[0]) / range * (values.length - 1);
+            }
+        }
+        return new TableScale(values, positions, majorInterval);
+    }
+
+    /**
+     * 对数刻度，刻度为10^fromExponent到10^toExponent之间的1~9倍10的整数次幂，每个10的整数次幂是长刻度
+     */
+    public static TableScale logarithmic(int fromExponent, int toExponent) {
+        if (fromExponent < 0 || toExponent > 18 || toExponent <= fromExponent) {
+            throw new IllegalArgumentException("invalid exponent range: " + fromExponent + " - " + toExponent);
+        }
+        int count = (toExponent - fromExponent) * 9 + 1;
+        long[] values = new long[count];
+        double[] positions = new double[count];
+
+        long decade = 1;
+        for (int i = 0; i < fromExponent; i++) {
+            decade *= 10;
+        }
+        int index = 0;
+        for (int e = fromExponent; e < toExponent; e++) {
+            for (int m = 1; m <= 9; m++) {
+                values[index] = m * decade;
+                //一个数量级的宽度为9，和等间距时9个刻度的宽度相同
+                positions[index] = (e - fromExponent + Math.log10(m)) * 9;
+                index++;
+            }
+            decade *= 10;
+        }
+        values[index] = decade;
+        positions[index] = (toExponent - fromExponent) * 9;
+        return new TableScale(values, positions, 9);
+    }
+
+    @Override
+    public long getMaxIndex() {
+        return mValues.length - 1;
+    }
+
+    @Override
+    public long getValue(long index) {
+        return mValues[(int) index];
+    }
+
+    @Override
+    public long indexOf(long value) {
+        int index = Arrays.binarySearch(mValues, value);
+        if (index >= 0) {
+            return index;
+        }
+        int insertion = -index - 1;
+        if (insertion == 0) {
+            return 0;
+        }
+        if (insertion == mValues.length) {
+            return mValues.length - 1;
+        }
+        return value - mValues[insertion - 1] < mValues[insertion] - value ? insertion - 1 : insertion;
+    }
+
+    @Override
+    public double getPosition(long index) {
+        return mPositions[(int) index];
+    }
+
+    @Override
+    public long getIndexAt(double position) {
+        int low = 0;
+        int high = mPositions.length - 1;
+        if (position <= mPositions[low]) {
+            return 0;
+        }
+        if (position >= mPositions[high]) {
+            return high;
+        }
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mPositions[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public long getAlignment(long index) {
+        return index;
+    }
+
+    @Override
+    public int getMajorInterval() {
+        return mMajorInterval;
+    }
+
+    @Override
+    public double getMinGap() {
+        return mMinGap;
+    }
+}
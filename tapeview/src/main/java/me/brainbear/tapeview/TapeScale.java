@@ -0,0 +1,47 @@
+package me.brainbear.tapeview;
+
+/**
+ * 刻度尺的刻度，决定每个刻度的数值和位置。
+ * 刻度按序号0到{@link #getMaxIndex()}排列，位置以没有缩放时的刻度间距为单位，第0个刻度的位置为0。
+ * 滑动和绘制时每一帧都会调用，实现不能分配对象，{@link #getPosition(long)}需要是O(1)的
+ */
+public interface TapeScale {
+
+    long getMaxIndex();
+
+    /**
+     * @return 以最小单位表示的数值
+     */
+    long getValue(long index);
+
+    /**
+     * 数值对应的刻度序号，超出范围时限制在范围内，不在刻度上的数值取最近的刻度
+     */
+    long indexOf(long value);
+
+    /**
+     * 第index个刻度的位置，随序号递增
+     */
+    double getPosition(long index);
+
+    /**
+     * 位置不大于position的最后一个刻度序号，超出范围时限制在范围内
+     */
+    long getIndexAt(double position);
+
+    /**
+     * 刻度抽稀和判断长刻度时使用的序号，和index的差必须是常量。
+     * 缩小时只画出getAlignment能被抽稀倍数整除的刻度
+     */
+    long getAlignment(long index);
+
+    /**
+     * 每隔多少个刻度画一个长刻度和文字，getAlignment能被它整除的刻度是长刻度
+     */
+    int getMajorInterval();
+
+    /**
+     * 相邻刻度之间最小的距离，用来决定缩小时的抽稀倍数
+     */
+    double getMinGap();
+}
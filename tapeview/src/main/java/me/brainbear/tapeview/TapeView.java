@@ -5,15 +5,20 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.hardware.SensorManager;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.text.TextPaint;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.util.TypedValue;
+import android.view.Display;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
+import android.view.animation.DecelerateInterpolator;
 import android.widget.OverScroller;
 
 import java.util.List;
@@ -25,37 +30,180 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TapeView extends View {
 
-    private static final String TAG = "TapeView";
+    /**
+     * 刻度文字缓存的容量，需要大于一屏内同时显示的文字数量
+     */
+    private static final int LABEL_CACHE_CAPACITY = 64;
+    /**
+     * 两侧超出屏幕继续绘制的距离，保证边缘的刻度文字能完整显示
+     */
+    private static final int DRAW_EDGE_EXTRA = 100;
+    /**
+     * 分块缓存最多同时保留的块数，每块为控件宽度的一半，一屏最多用到3块
+     */
+    private static final int TILE_CACHE_CAPACITY = 5;
+
+    /**
+     * 当前值每次变化都立即通知
+     */
+    public static final int DISPATCH_EVERY_CHANGE = 0;
+    /**
+     * 每一帧最多通知一次，只通知这一帧最后的值
+     */
+    public static final int DISPATCH_PER_FRAME = 1;
+    /**
+     * 只在滑动停止并且对齐到刻度后通知
+     */
+    public static final int DISPATCH_SETTLE_ONLY = 2;
+
+    /**
+     * 吸附惯性滑动使用的减速曲线系数，曲线为1-(1-t)^(2*factor)，起始速度为2*factor*距离/时长
+     */
+    private static final float SNAP_DECELERATE_FACTOR = 1.5f;
+    /**
+     * OverScroller惯性滑动样条曲线的常数
+     */
+    private static final float FLING_DECELERATION_RATE = (float) (Math.log(0.78) / Math.log(0.9));
+    private static final float FLING_INFLEXION = 0.35f;
+    /**
+     * scrollToValue时真正滑动的最大刻度数，更远的距离先直接跳到目标附近
+     */
+    private static final int SCROLL_TO_VALUE_MAX_DIVISIONS = 5;
+    private static final int SCROLL_TO_VALUE_DURATION_PER_DIVISION = 60;
+    private static final float DEFAULT_MIN_ZOOM = 0.001f;
+    private static final float DEFAULT_MAX_ZOOM = 4f;
 
     private Paint mDivisionPaint;
 
     private Paint mIndicatorPaint;
 
     /**
-     * 两个刻度的距离，单位px
+     * 没有缩放时两个刻度的距离，单位px
+     */
+    private int mBaseDivisionGapWidth = dp2px(30);
+    /**
+     * 缩放后两个刻度的距离，单位px
+     */
+    private float mDivisionGapWidth = mBaseDivisionGapWidth;
+    private float mZoom = 1;
+    private float mMinZoom = DEFAULT_MIN_ZOOM;
+    private float mMaxZoom = DEFAULT_MAX_ZOOM;
+    private boolean mZoomEnabled = true;
+    private ScaleGestureDetector mScaleDetector;
+    /**
+     * 画出来的相邻刻度的最小距离，缩小到刻度比这更密时按长刻度间隔的倍数抽掉短刻度
      */
-    private int mDivisionGapWidth = dp2px(30);
+    private int mMinDivisionSpacing = dp2px(6);
     /**
-     * 滑动过程时中点到当前值刻度的偏移量，负值代表中点在当前值右边，正值代表中点在当前值左边
+     * 每隔多少个刻度画一个，为1、长刻度间隔、长刻度间隔的平方……，长刻度和文字的间隔也同样放大
      */
-    private int mDivisionOffset;
+    private long mDecimation = 1;
+    /**
+     * 滑动过程时中点到当前值刻度的偏移量，负值代表中点在当前值右边，正值代表中点在当前值左边，
+     * 当前值总是离中点最近的刻度
+     */
+    private float mDivisionOffset;
     private int mShortDivisionHeight = dp2px(10);
     private int mLongDivisionHeight = dp2px(40);
-    private int mMinValue = 0;
-    private int mMaxValue = 100;
-    private int mCurrentValue = 50;
+    /**
+     * 数值都以最小单位的整数表示，小数通过mDecimalDigits在显示时换算，例如0.05kg在两位小数下为5
+     */
+    private TapeScale mScale = new LinearScale(0, 100, 1, 10);
+    private int mDecimalDigits = 0;
+    /**
+     * 当前值刻度在mScale中的序号
+     */
+    private long mCurrentIndex = 50;
     private int mTextSize = sp2px(20);
     private int mTextHeight;
     private int mTextMarginTop = dp2px(8);
     private TextPaint mTextPaint;
     private Rect mTextRect;
+    private LabelCache mLabelCache = new LabelCache(LABEL_CACHE_CAPACITY);
+    private final LabelFormatter mDefaultLabelFormatter = new LabelFormatter() {
+        @Override
+        public String format(long value) {
+            return formatDecimal(value, mDecimalDigits);
+        }
+    };
+    private LabelFormatter mLabelFormatter = mDefaultLabelFormatter;
+    /**
+     * 一帧内所有刻度线的端点，每4个float为一条线，通过一次drawLines画出
+     */
+    private float[] mDivisionLines = new float[0];
+    private int mDivisionLineCount;
+    private boolean mTileCacheEnabled;
+    private TileCache mTileCache;
+    private final TileCache.TileRenderer mTileRenderer = new TileCache.TileRenderer() {
+        @Override
+        public void renderTile(Canvas canvas, long tile) {
+            //块按刻度尺上的位置划分，第tile块的左边缘位于tile * 块宽度处
+            double start = (double) tile * mTileCache.getTileWidth();
+            //相邻块的刻度文字可能延伸到这一块里，一起画出来，超出bitmap的部分会被裁掉
+            long first = alignDivision(mScale.getIndexAt((start - DRAW_EDGE_EXTRA) / mDivisionGapWidth));
+            long last = mScale.getIndexAt((start + mTileCache.getTileWidth() + DRAW_EDGE_EXTRA) / mDivisionGapWidth);
+            for (long index = first; index <= last; index += mDecimation) {
+                if (index < 0) {
+                    continue;
+                }
+                float x = (float) (mScale.getPosition(index) * mDivisionGapWidth - start);
+                long value = mScale.getValue(index);
+                if (isMajor(index)) {
+                    canvas.drawLine(x, 0, x, mLongDivisionHeight, mDivisionPaint);
+                    drawText(canvas, value, x, mLongDivisionHeight);
+                } else {
+                    canvas.drawLine(x, 0, x, mShortDivisionHeight, mDivisionPaint);
+                }
+            }
+        }
+    };
     private float mLastX;
     private OverScroller mScroller;
+    /**
+     * 只给吸附惯性滑动使用的减速曲线，其他动画保持mScroller默认的曲线
+     */
+    private OverScroller mSnapScroller;
+    /**
+     * 估算惯性滑动距离和时长用的物理系数，和OverScroller的减速曲线一致
+     */
+    private float mFlingPhysicalCoeff;
+    private int mFlingDistance;
+    private int mFlingDuration;
     private int mMaxVelocity;
     private int mMinVelocity;
     private VelocityTracker mVelocityTracker;
     private boolean mCanScroll;
+    /**
+     * mScroller是否有还没结束的动画，结束时需要通知停止
+     */
+    private boolean mScrolling;
+    private boolean mSnappingFlingEnabled = true;
+    private boolean mTouchPredictionEnabled;
+    /**
+     * 按最近两个触摸采样的速度预测下一次vsync时手指的位置，只在绘制时平移刻度尺，不改变当前值
+     */
+    private float mPredictionOffset;
+    private long mLastEventTime;
+    private float mFrameIntervalMillis = 1000f / 60;
     private List<OnTapeIndexChangedListener> mListeners = new CopyOnWriteArrayList();
+    private int mDispatchPolicy = DISPATCH_PER_FRAME;
+    private long mLastDispatchedIndex = -1;
+    private boolean mDispatchPending;
+    private MetricsSink mMetricsSink;
+    /**
+     * 以下统计只在设置了mMetricsSink时更新
+     */
+    private int mFrameLabelCount;
+    private long mScrollStartTime;
+    private int mScrollFrameCount;
+    private float mSnapDistance;
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mDispatchPending = false;
+            dispatchIndexChanged();
+        }
+    };
 
 
     public TapeView(Context context) {
@@ -87,60 +235,107 @@ public class TapeView extends View {
         mTextPaint.setTextSize(mTextSize);
 
         mTextRect = new Rect();
-        mTextPaint.getTextBounds("0", 0, 1, mTextRect);
-        mTextHeight = mTextRect.height();
+        measureTextHeight();
 
 
         mScroller = new OverScroller(getContext());
+        mSnapScroller = new OverScroller(getContext(), new DecelerateInterpolator(SNAP_DECELERATE_FACTOR));
+        float ppi = getResources().getDisplayMetrics().density * 160.0f;
+        mFlingPhysicalCoeff = SensorManager.GRAVITY_EARTH * 39.37f * ppi * 0.84f;
 
         ViewConfiguration vc = ViewConfiguration.get(getContext());
         mMaxVelocity = vc.getScaledMaximumFlingVelocity();
         mMinVelocity = vc.getScaledMinimumFlingVelocity();
 
-        Log.d(TAG, "init: max velocity:" + mMaxVelocity + " min velocity:" + mMinVelocity);
-
         mVelocityTracker = VelocityTracker.obtain();
+
+        mScaleDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                setZoom(mZoom * detector.getScaleFactor());
+                return true;
+            }
+        });
+        //双击后拖动的缩放手势和单指拖动冲突
+        mScaleDetector.setQuickScaleEnabled(false);
     }
 
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        if (mZoomEnabled) {
+            mScaleDetector.onTouchEvent(event);
+        }
 
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
                 mScroller.forceFinished(true);
+                mSnapScroller.forceFinished(true);
                 mCanScroll = false;
+                mScrolling = false;
+                mScrollStartTime = 0;
+                mPredictionOffset = 0;
 
                 mLastX = event.getX();
+                mLastEventTime = event.getEventTime();
+                mVelocityTracker.clear();
                 mVelocityTracker.addMovement(event);
 
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_POINTER_UP:
+                //拖动跟随第0个手指，手指数量变化时第0个手指可能换了，重新记录位置
+                int pointerIndex = event.getActionMasked() == MotionEvent.ACTION_POINTER_UP
+                        && event.getActionIndex() == 0 ? 1 : 0;
+                mLastX = event.getX(pointerIndex);
+                mLastEventTime = event.getEventTime();
+                mPredictionOffset = 0;
+                mVelocityTracker.clear();
                 break;
             case MotionEvent.ACTION_MOVE:
+                if (mScaleDetector.isInProgress()) {
+                    mLastX = event.getX();
+                    mLastEventTime = event.getEventTime();
+                    invalidate();
+                    break;
+                }
+                //VelocityTracker会读取event中合并的历史采样
                 mVelocityTracker.addMovement(event);
 
-                int dx = (int) (event.getX() - mLastX);
-
-                computeCurrentIndex(dx);
+                //高刷新率的触摸屏一个event里会合并多个采样，逐个处理，到达边界时的限制也按采样顺序生效
+                int historySize = event.getHistorySize();
+                for (int i = 0; i < historySize; i++) {
+                    onDragSample(event.getHistoricalX(i), event.getHistoricalEventTime(i));
+                }
+                onDragSample(event.getX(), event.getEventTime());
 
-                mLastX = event.getX();
                 invalidate();
                 break;
             case MotionEvent.ACTION_CANCEL:
             case MotionEvent.ACTION_UP:
+                mVelocityTracker.addMovement(event);
+                mPredictionOffset = 0;
 
                 mVelocityTracker.computeCurrentVelocity(1000, mMaxVelocity);
                 float xVelocity = mVelocityTracker.getXVelocity();
 
-                Log.d(TAG, "onTouchEvent ACTION_MOVE: x velocity:" + xVelocity);
-//
                 if (Math.abs(xVelocity) > 2 * mMinVelocity) {
-                    mCanScroll = true;
-                    mScroller.fling((int) event.getX(), 0, (int) xVelocity, 0, Integer.MIN_VALUE,
-                            Integer.MAX_VALUE, 0, 0);
+                    if (mSnappingFlingEnabled) {
+                        snappingFling((int) event.getX(), xVelocity);
+                    } else {
+                        mCanScroll = true;
+                        onScrollStarted(0);
+                        mScrolling = true;
+                        mLastX = (int) event.getX();
+                        mScroller.fling((int) event.getX(), 0, (int) xVelocity, 0, Integer.MIN_VALUE,
+                                Integer.MAX_VALUE, 0, 0);
+                    }
 
                     invalidate();
                 } else if (mDivisionOffset != 0) {
                     scrollToDivision((int) event.getX());
+                } else {
+                    dispatchIndexSettled();
                 }
 
                 break;
@@ -150,70 +345,396 @@ public class TapeView extends View {
     }
 
 
-    private void computeCurrentIndex(int dx) {
-        int currentValue = mCurrentValue - (dx + mDivisionOffset) / mDivisionGapWidth;
-        mDivisionOffset = (dx + mDivisionOffset) % mDivisionGapWidth;
+    private void onDragSample(float x, long eventTime) {
+        float dx = x - mLastX;
+        computeCurrentIndex(dx);
 
-        if (currentValue >= mMaxValue && mDivisionOffset < 0) {
-            currentValue = mMaxValue;
-            mDivisionOffset = 0;
+        if (mTouchPredictionEnabled) {
+            long dt = eventTime - mLastEventTime;
+            if (dt > 0) {
+                float prediction = dx / dt * mFrameIntervalMillis;
+                //预测最多一个刻度，到达边界后不再预测
+                prediction = Math.max(-mDivisionGapWidth, Math.min(mDivisionGapWidth, prediction));
+                if ((mCurrentIndex == 0 && mDivisionOffset == 0 && prediction > 0)
+                        || (mCurrentIndex == mScale.getMaxIndex() && mDivisionOffset == 0 && prediction < 0)) {
+                    prediction = 0;
+                }
+                mPredictionOffset = prediction;
+            }
         }
-        if (currentValue <= mMinValue && mDivisionOffset > 0) {
-            currentValue = mMinValue;
-            mDivisionOffset = 0;
+
+        mLastX = x;
+        mLastEventTime = eventTime;
+    }
+
+
+    /**
+     * 根据速度先算出惯性滑动停下的位置，取最近的刻度并限制在范围内，再用一段减速动画直接滑到这个刻度，
+     * 不需要惯性滑动结束后再吸附一次
+     */
+    private void snappingFling(int startX, float xVelocity) {
+        estimateFling(xVelocity);
+        int flingDistance = mFlingDistance;
+        int flingDuration = mFlingDuration;
+
+        //中点在刻度尺上的位置减少flingDistance，取最近的刻度
+        double center = getCenterPosition();
+        long targetIndex = nearestIndex(center - flingDistance);
+        int distance = (int) Math.round(center - mScale.getPosition(targetIndex) * mDivisionGapWidth);
+
+        if (distance == 0) {
+            dispatchIndexSettled();
+            return;
         }
 
-        if (currentValue != mCurrentValue) {
-            mCurrentValue = currentValue;
+        //让动画的起始速度和手指离开时的速度一致
+        int duration = (int) (2 * SNAP_DECELERATE_FACTOR * 1000 * Math.abs(distance) / Math.abs(xVelocity));
+        duration = Math.min(duration, flingDuration);
+
+        mCanScroll = false;
+        onScrollStarted(distance);
+        mScrolling = true;
+        mLastX = startX;
+        mSnapScroller.startScroll(startX, 0, distance, 0, duration);
+    }
+
+
+    /**
+     * 按OverScroller.fling相同的样条曲线算出惯性滑动的距离和时长，结果保存在mFlingDistance和mFlingDuration中
+     */
+    private void estimateFling(float xVelocity) {
+        double l = Math.log(FLING_INFLEXION * Math.abs(xVelocity)
+                / (ViewConfiguration.getScrollFriction() * mFlingPhysicalCoeff));
+        double decelMinusOne = FLING_DECELERATION_RATE - 1.0;
+        mFlingDistance = (int) Math.round(Math.signum(xVelocity) * ViewConfiguration.getScrollFriction()
+                * mFlingPhysicalCoeff * Math.exp(FLING_DECELERATION_RATE / decelMinusOne * l));
+        mFlingDuration = (int) (1000.0 * Math.exp(l / decelMinusOne));
+    }
+
+    private void computeCurrentIndex(float dx) {
+        setCenterPosition(getCenterPosition() - dx);
+    }
+
+    /**
+     * 中点在刻度尺上的位置，单位px，第0个刻度的位置为0
+     */
+    private double getCenterPosition() {
+        return mScale.getPosition(mCurrentIndex) * mDivisionGapWidth - mDivisionOffset;
+    }
+
+    /**
+     * 把中点移到position，超出范围时限制在两端，当前值取离中点最近的刻度
+     */
+    private void setCenterPosition(double position) {
+        long maxIndex = mScale.getMaxIndex();
+        position = Math.max(0, Math.min(mScale.getPosition(maxIndex) * mDivisionGapWidth, position));
+
+        long index = nearestIndex(position);
+        mDivisionOffset = (float) (mScale.getPosition(index) * mDivisionGapWidth - position);
+        setCurrentIndex(index);
+    }
+
+    /**
+     * 离position最近的刻度，超出范围时取两端的刻度
+     */
+    private long nearestIndex(double position) {
+        double unitPosition = position / mDivisionGapWidth;
+        long index = mScale.getIndexAt(unitPosition);
+        if (index < mScale.getMaxIndex()
+                && mScale.getPosition(index + 1) - unitPosition < unitPosition - mScale.getPosition(index)) {
+            index++;
         }
+        return index;
     }
 
 
     @Override
     public void computeScroll() {
         super.computeScroll();
-        if (mScroller.computeScrollOffset()) {
-            int dx = (int) (mScroller.getCurrX() - mLastX);
+        OverScroller scroller = mSnapScroller.isFinished() ? mScroller : mSnapScroller;
+        if (scroller.computeScrollOffset()) {
+            float dx = scroller.getCurrX() - mLastX;
             computeCurrentIndex(dx);
 
-            mLastX = mScroller.getCurrX();
+            mLastX = scroller.getCurrX();
+            if (null != mMetricsSink) {
+                mScrollFrameCount++;
+            }
             invalidate();
-        } else if (mCanScroll && mDivisionOffset != 0) {
+            return;
+        }
+        if (mScrolling && Math.abs(mDivisionOffset) < 1) {
+            //动画的距离取整后剩下的不足1px的偏移直接归零
+            mDivisionOffset = 0;
+        }
+        if (mCanScroll && mDivisionOffset != 0) {
             scrollToDivision(mScroller.getCurrX());
+        } else if (mScrolling) {
+            mScrolling = false;
+            onScrollSettled();
+            dispatchIndexSettled();
         }
     }
 
-    private void scrollToDivision(int startX, int distance) {
-        Log.d(TAG, "scrollToDivision: " + startX + " " + distance);
-        mScroller.startScroll(startX, 0, distance, 0);
+    private void scrollToDivision(int startX, float distance) {
+        onScrollStarted(distance);
+        mScrolling = true;
+        mLastX = startX;
+        mScroller.startScroll(startX, 0, Math.round(distance), 0);
         invalidate();
     }
 
     private void scrollToDivision(int startX) {
-        if (mDivisionOffset < 0) {
-            boolean b = Math.abs(mDivisionOffset) > mDivisionGapWidth / 2;
-            if (b) {
-                scrollToDivision(startX, -(mDivisionGapWidth + mDivisionOffset));
-            } else {
-                scrollToDivision(startX, -mDivisionOffset);
-            }
+        //当前值就是离中点最近的刻度，滑回当前值即可
+        if (mDivisionOffset != 0) {
+            scrollToDivision(startX, -mDivisionOffset);
+        }
+    }
 
-        } else if (mDivisionOffset > 0) {
-            boolean b = Math.abs(mDivisionOffset) > mDivisionGapWidth / 2;
-            if (b) {
-                scrollToDivision(startX, mDivisionGapWidth - mDivisionOffset);
-            } else {
-                scrollToDivision(startX, -mDivisionOffset);
-            }
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        ensureDivisionLinesCapacity();
+        releaseTileCache();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        Display display = getDisplay();
+        if (null != display && display.getRefreshRate() > 0) {
+            mFrameIntervalMillis = 1000f / display.getRefreshRate();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        releaseTileCache();
+        if (mDispatchPending) {
+            mDispatchPending = false;
+            removeCallbacks(mDispatchRunnable);
+        }
+    }
+
+    /**
+     * 手指停住后不会再有新的采样，距离上一个采样超过一帧后预测在下一帧内线性衰减到0，
+     * 衰减过程中继续请求重绘
+     */
+    private float getDecayedPrediction() {
+        if (0 == mPredictionOffset) {
+            return 0;
+        }
+        float age = SystemClock.uptimeMillis() - mLastEventTime;
+        float scale = Math.max(0, Math.min(1, 2 - age / mFrameIntervalMillis));
+        if (0 == scale) {
+            mPredictionOffset = 0;
+            return 0;
+        }
+        postInvalidateOnAnimation();
+        return mPredictionOffset * scale;
+    }
+
+    private void ensureDivisionLinesCapacity() {
+        //两侧各自从中点画到超出边缘DRAW_EDGE_EXTRA的位置，再多留一个刻度给mDivisionOffset
+        int perSide = (int) ((getWidth() / 2 + DRAW_EDGE_EXTRA) / (mDivisionGapWidth * mScale.getMinGap() * mDecimation)) + 2;
+        int size = perSide * 2 * 4;
+        if (mDivisionLines.length < size) {
+            mDivisionLines = new float[size];
         }
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        drawLeft(canvas);
-        drawRight(canvas);
+        long startTime = null == mMetricsSink ? 0 : System.nanoTime();
+        mFrameLabelCount = 0;
+        mDivisionLineCount = 0;
+        int tileCount = 0;
+
+        int saveCount = canvas.save();
+        canvas.translate(getDecayedPrediction(), 0);
+        //缩放过程中每一帧的刻度间距都不同，不使用分块缓存
+        if (mTileCacheEnabled && !mScaleDetector.isInProgress() && getWidth() > 0 && getHeight() > 0) {
+            tileCount = drawTiles(canvas);
+        } else {
+            ensureDivisionLinesCapacity();
+            drawLeft(canvas);
+            drawRight(canvas);
+            canvas.drawLines(mDivisionLines, 0, mDivisionLineCount * 4, mDivisionPaint);
+        }
+        canvas.restoreToCount(saveCount);
         drawIndicator(canvas);
+
+        if (null != mMetricsSink) {
+            mMetricsSink.onFrameDrawn(System.nanoTime() - startTime, mDivisionLineCount, mFrameLabelCount, tileCount);
+        }
+    }
+
+
+    /**
+     * 分块缓存模式，只需要把可见的块平移后画出来
+     *
+     * @return 画出的块数
+     */
+    private int drawTiles(Canvas canvas) {
+        if (null == mTileCache) {
+            mTileCache = new TileCache(TILE_CACHE_CAPACITY, Math.max(1, getWidth() / 2), getTileHeight());
+        }
+
+        int width = getWidth();
+        int centerX = width / 2;
+        int tileWidth = mTileCache.getTileWidth();
+        double center = getCenterPosition();
+
+        double left = Math.max(center - centerX, -DRAW_EDGE_EXTRA);
+        double right = Math.min(center + width - centerX,
+                mScale.getPosition(mScale.getMaxIndex()) * mDivisionGapWidth + DRAW_EDGE_EXTRA);
+        long firstTile = (long) Math.floor(left / tileWidth);
+        long lastTile = (long) Math.floor(right / tileWidth);
+
+        for (long tile = firstTile; tile <= lastTile; tile++) {
+            float x = (float) ((double) tile * tileWidth - center) + centerX;
+            canvas.drawBitmap(mTileCache.obtain(tile, mTileRenderer), x, 0, null);
+        }
+        return (int) (lastTile - firstTile + 1);
+    }
+
+    /**
+     * 块只需要覆盖刻度尺的内容，长刻度加上文字，和View的高度无关，刻度尺从顶部开始画，块也画在顶部
+     */
+    private int getTileHeight() {
+        int contentHeight = mLongDivisionHeight + mTextMarginTop + mTextHeight
+                + (int) Math.ceil(mTextPaint.descent()) + 1;
+        return Math.max(1, Math.min(getHeight(), contentHeight));
+    }
+
+    private static long floorDiv(long x, long y) {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    private void releaseTileCache() {
+        if (null != mTileCache) {
+            mTileCache.recycle();
+            mTileCache = null;
+        }
+    }
+
+    private void invalidateLabels() {
+        mLabelCache.clear();
+        if (null != mTileCache) {
+            mTileCache.invalidate();
+        }
+    }
+
+    /**
+     * 开启后刻度尺按块渲染到bitmap中缓存，滑动时只需要平移这些bitmap，
+     * 适合刻度很密或者频繁滑动的场景，代价是额外占用几块和控件等高的bitmap内存
+     */
+    public void setTileCacheEnabled(boolean enabled) {
+        if (mTileCacheEnabled == enabled) {
+            return;
+        }
+        mTileCacheEnabled = enabled;
+        if (!enabled) {
+            releaseTileCache();
+        }
+        invalidate();
+    }
+
+    public boolean isTileCacheEnabled() {
+        return mTileCacheEnabled;
+    }
+
+    /**
+     * 开启后惯性滑动会直接停在刻度上，默认开启，关闭后惯性滑动结束再吸附到最近的刻度
+     */
+    public void setSnappingFlingEnabled(boolean enabled) {
+        mSnappingFlingEnabled = enabled;
+    }
+
+    public boolean isSnappingFlingEnabled() {
+        return mSnappingFlingEnabled;
+    }
+
+    /**
+     * 开启后拖动时按触摸速度把刻度尺向前预测一帧的距离，减少跟手的延迟，默认关闭
+     */
+    public void setTouchPredictionEnabled(boolean enabled) {
+        mTouchPredictionEnabled = enabled;
+        if (!enabled) {
+            mPredictionOffset = 0;
+        }
+    }
+
+    public boolean isTouchPredictionEnabled() {
+        return mTouchPredictionEnabled;
+    }
+
+    /**
+     * 是否可以双指缩放，默认开启
+     */
+    public void setZoomEnabled(boolean enabled) {
+        mZoomEnabled = enabled;
+    }
+
+    public boolean isZoomEnabled() {
+        return mZoomEnabled;
+    }
+
+    public void setZoomRange(float minZoom, float maxZoom) {
+        if (minZoom <= 0 || maxZoom < minZoom) {
+            throw new IllegalArgumentException("invalid zoom range: " + minZoom + " - " + maxZoom);
+        }
+        mMinZoom = minZoom;
+        mMaxZoom = maxZoom;
+        setZoom(mZoom);
+    }
+
+    /**
+     * 以中点为中心缩放，刻度间距为默认值乘以zoom，当前值不变
+     */
+    public void setZoom(float zoom) {
+        zoom = Math.max(mMinZoom, Math.min(mMaxZoom, zoom));
+        if (zoom == mZoom) {
+            return;
+        }
+        float gap = mBaseDivisionGapWidth * zoom;
+        mDivisionOffset = mDivisionOffset * gap / mDivisionGapWidth;
+        mDivisionGapWidth = gap;
+        mZoom = zoom;
+
+        updateDecimation();
+        releaseTileCache();
+        invalidate();
+    }
+
+    public float getZoom() {
+        return mZoom;
+    }
+
+    /**
+     * 刻度间距小于mMinDivisionSpacing时按长刻度间隔的倍数抽掉刻度，保证一屏内画出的刻度数量有上限
+     */
+    private void updateDecimation() {
+        long factor = Math.max(2, mScale.getMajorInterval());
+        double minGap = mDivisionGapWidth * mScale.getMinGap();
+        long decimation = 1;
+        while (minGap * decimation < mMinDivisionSpacing && decimation < Long.MAX_VALUE / factor) {
+            decimation *= factor;
+        }
+        if (decimation != mDecimation) {
+            mDecimation = decimation;
+            releaseTileCache();
+        }
     }
 
 
@@ -224,58 +745,296 @@ public class TapeView extends View {
     }
 
 
+    /**
+     * 当前值右边的刻度，当前值左边最近的刻度由drawLeft负责
+     */
     private void drawRight(Canvas canvas) {
-        int value = mCurrentValue;
+        long index = alignDivision(mCurrentIndex) + mDecimation;
+        long maxIndex = mScale.getMaxIndex();
+        if (index > maxIndex) {
+            return;
+        }
         int width = getWidth();
 
-        int centerX = width / 2;
+        float originX = width / 2 + mDivisionOffset;
+        double origin = mScale.getPosition(mCurrentIndex);
 
 
-        for (int x = centerX + mDivisionOffset; x < width + 100; x += mDivisionGapWidth) {
-            if (value % 10 == 0) {
-                canvas.drawLine(x, 0, x, mLongDivisionHeight, mDivisionPaint);
-                drawText(canvas, value, x, mLongDivisionHeight);
-            } else {
-                canvas.drawLine(x, 0, x, mShortDivisionHeight, mDivisionPaint);
-            }
-            value++;
+        for (float x = originX + (float) ((mScale.getPosition(index) - origin) * mDivisionGapWidth); x < width + DRAW_EDGE_EXTRA; ) {
+            addDivision(canvas, index, x);
+            index += mDecimation;
 
-            if (value > mMaxValue) {
+            if (index > maxIndex) {
                 return;
             }
+            x = originX + (float) ((mScale.getPosition(index) - origin) * mDivisionGapWidth);
         }
 
     }
 
     private void drawLeft(Canvas canvas) {
-        int value = mCurrentValue;
+        long index = alignDivision(mCurrentIndex);
+        if (index < 0) {
+            return;
+        }
         int width = getWidth();
 
-        int centerX = width / 2;
+        float originX = width / 2 + mDivisionOffset;
+        double origin = mScale.getPosition(mCurrentIndex);
 
 
-        for (int x = centerX + mDivisionOffset; x > 0 - 100; x -= mDivisionGapWidth) {
-            if (value % 10 == 0) {
-                canvas.drawLine(x, 0, x, mLongDivisionHeight, mDivisionPaint);
-                drawText(canvas, value, x, mLongDivisionHeight);
-            } else {
-                canvas.drawLine(x, 0, x, mShortDivisionHeight, mDivisionPaint);
-            }
-            value--;
+        for (float x = originX + (float) ((mScale.getPosition(index) - origin) * mDivisionGapWidth); x > 0 - DRAW_EDGE_EXTRA; ) {
+            addDivision(canvas, index, x);
+            index -= mDecimation;
 
-            if (value < mMinValue) {
+            if (index < 0) {
                 return;
             }
+            x = originX + (float) ((mScale.getPosition(index) - origin) * mDivisionGapWidth);
+        }
+    }
+
+
+    /**
+     * 把刻度线追加到mDivisionLines中，刻度文字直接画出
+     */
+    private void addDivision(Canvas canvas, long index, float x) {
+        int height;
+        if (isMajor(index)) {
+            height = mLongDivisionHeight;
+            drawText(canvas, mScale.getValue(index), x, mLongDivisionHeight);
+        } else {
+            height = mShortDivisionHeight;
+        }
+
+        int i = mDivisionLineCount * 4;
+        mDivisionLines[i] = x;
+        mDivisionLines[i + 1] = 0;
+        mDivisionLines[i + 2] = x;
+        mDivisionLines[i + 3] = height;
+        mDivisionLineCount++;
+    }
+
+
+    /**
+     * 对齐序号是长刻度间隔的整数倍时画长刻度，缩小后间隔随抽稀倍数一起放大
+     */
+    private boolean isMajor(long index) {
+        return floorMod(mScale.getAlignment(index), mScale.getMajorInterval() * mDecimation) == 0;
+    }
+
+    /**
+     * 不大于index并且在当前缩放级别下需要画出的刻度序号
+     */
+    private long alignDivision(long index) {
+        return index - floorMod(mScale.getAlignment(index), mDecimation);
+    }
+
+    private void drawText(Canvas canvas, long value, float x, int y) {
+        int slot = mLabelCache.obtain(value, mTextPaint, mLabelFormatter);
+        mFrameLabelCount++;
+
+        canvas.drawText(mLabelCache.getLabel(slot), x - mLabelCache.getWidth(slot) / 2,
+                y + mTextHeight + mTextMarginTop, mTextPaint);
+    }
+
+    private void measureTextHeight() {
+        mTextPaint.getTextBounds("0", 0, 1, mTextRect);
+        mTextHeight = mTextRect.height();
+        //块的高度跟着文字变化
+        releaseTileCache();
+    }
+
+
+    public void setTextSize(int textSize) {
+        if (mTextSize == textSize) {
+            return;
+        }
+        mTextSize = textSize;
+        mTextPaint.setTextSize(textSize);
+        measureTextHeight();
+        invalidateLabels();
+        invalidate();
+    }
+
+    public void setTypeface(Typeface typeface) {
+        if (mTextPaint.getTypeface() == typeface) {
+            return;
         }
+        mTextPaint.setTypeface(typeface);
+        measureTextHeight();
+        invalidateLabels();
+        invalidate();
     }
 
+    public void setLabelFormatter(LabelFormatter formatter) {
+        mLabelFormatter = null == formatter ? mDefaultLabelFormatter : formatter;
+        invalidateLabels();
+        invalidate();
+    }
 
-    private void drawText(Canvas canvas, int value, int x, int y) {
-        String s = String.valueOf(value);
 
-        mTextPaint.getTextBounds(s, 0, s.length(), mTextRect);
+    /**
+     * 设置刻度，当前值保持不变，超出新的范围时限制在范围内
+     */
+    public void setScale(TapeScale scale) {
+        if (null == scale) {
+            throw new IllegalArgumentException("scale must not be null");
+        }
+        long value = getValue();
+        mScale = scale;
+
+        mScroller.forceFinished(true);
+        mSnapScroller.forceFinished(true);
+        mScrolling = false;
+        mDivisionOffset = 0;
+        //新的刻度下序号的含义变了，当前值需要重新通知
+        mCurrentIndex = scale.indexOf(value);
+        mLastDispatchedIndex = -1;
+        onIndexChanged();
+
+        updateDecimation();
+        releaseTileCache();
+        invalidateLabels();
+        invalidate();
+    }
 
-        canvas.drawText(s, x - mTextRect.width() / 2, y + mTextHeight + mTextMarginTop, mTextPaint);
+    public TapeScale getScale() {
+        return mScale;
+    }
+
+    /**
+     * 设置等间距刻度的范围，数值都以最小单位的整数表示，长刻度间隔保持不变
+     *
+     * @param min  最小值，必须是step的整数倍
+     * @param max  最大值，会向下取整到step的整数倍
+     * @param step 相邻两个刻度的数值差
+     * @see LinearScale
+     */
+    public void setValueRange(long min, long max, long step) {
+        setScale(new LinearScale(min, max, step, mScale.getMajorInterval()));
+    }
+
+    /**
+     * 每隔多少个刻度画一个长刻度和文字，只能用于等间距刻度，其他刻度在创建时指定
+     */
+    public void setMajorInterval(int majorInterval) {
+        if (!(mScale instanceof LinearScale)) {
+            throw new IllegalStateException("major interval of " + mScale.getClass().getSimpleName()
+                    + " is fixed, pass it to the scale instead");
+        }
+        LinearScale scale = (LinearScale) mScale;
+        setScale(new LinearScale(scale.getMinValue(), scale.getMaxValue(), scale.getStep(), majorInterval));
+    }
+
+    /**
+     * 默认的文字格式化时使用的小数位数，例如数值5在两位小数下显示为0.05
+     */
+    public void setDecimalDigits(int decimalDigits) {
+        if (decimalDigits < 0) {
+            throw new IllegalArgumentException("decimalDigits must not be negative: " + decimalDigits);
+        }
+        mDecimalDigits = decimalDigits;
+        invalidateLabels();
+        invalidate();
+    }
+
+    public long getMinValue() {
+        return mScale.getValue(0);
+    }
+
+    public long getMaxValue() {
+        return mScale.getValue(mScale.getMaxIndex());
+    }
+
+    public long getValue() {
+        return mScale.getValue(mCurrentIndex);
+    }
+
+    /**
+     * 直接设置当前值，超出范围的值会被限制在范围内，不在刻度上的值取最近的刻度
+     */
+    public void setValue(long value) {
+        scrollToValue(value, false);
+    }
+
+    /**
+     * 滚动到指定的值，超出范围的值会被限制在范围内，不在刻度上的值取最近的刻度。
+     * 距离较远时先直接跳到目标附近，只用动画滑过最后几个刻度，动画时长和距离无关
+     */
+    public void scrollToValue(long value, boolean animate) {
+        long targetIndex = mScale.indexOf(value);
+
+        mScroller.forceFinished(true);
+        mSnapScroller.forceFinished(true);
+        mCanScroll = false;
+        mScrolling = false;
+        mScrollStartTime = 0;
+        mPredictionOffset = 0;
+
+        if (!animate) {
+            mDivisionOffset = 0;
+            setCurrentIndex(targetIndex);
+            dispatchIndexSettled();
+            invalidate();
+            return;
+        }
+
+        long divisions = targetIndex - mCurrentIndex;
+        if (Math.abs(divisions) > SCROLL_TO_VALUE_MAX_DIVISIONS) {
+            setCurrentIndex(targetIndex - (divisions > 0 ? SCROLL_TO_VALUE_MAX_DIVISIONS : -SCROLL_TO_VALUE_MAX_DIVISIONS));
+            divisions = targetIndex - mCurrentIndex;
+        }
+
+        int distance = (int) Math.round(getCenterPosition() - mScale.getPosition(targetIndex) * mDivisionGapWidth);
+        if (distance == 0) {
+            mDivisionOffset = 0;
+            dispatchIndexSettled();
+            invalidate();
+            return;
+        }
+
+        int duration = (int) (Math.max(1, Math.abs(divisions)) * SCROLL_TO_VALUE_DURATION_PER_DIVISION);
+        onScrollStarted(distance);
+        mScrolling = true;
+        mLastX = 0;
+        mScroller.startScroll(0, 0, distance, 0, duration);
+        invalidate();
+    }
+
+    private void setCurrentIndex(long index) {
+        if (index != mCurrentIndex) {
+            mCurrentIndex = index;
+            onIndexChanged();
+        }
+    }
+
+    /**
+     * 只在文字缓存没有命中时调用，不需要在意这里的对象分配
+     */
+    static String formatDecimal(long value, int decimalDigits) {
+        if (decimalDigits == 0) {
+            return String.valueOf(value);
+        }
+        StringBuilder sb = new StringBuilder(20 + decimalDigits);
+        if (value < 0) {
+            sb.append('-');
+        }
+        String digits = String.valueOf(Math.abs(value));
+        if (value == Long.MIN_VALUE) {
+            digits = digits.substring(1);
+        }
+        int integerLength = digits.length() - decimalDigits;
+        if (integerLength <= 0) {
+            sb.append('0').append('.');
+            for (int i = integerLength; i < 0; i++) {
+                sb.append('0');
+            }
+            sb.append(digits);
+        } else {
+            sb.append(digits, 0, integerLength).append('.').append(digits, integerLength, digits.length());
+        }
+        return sb.toString();
     }
 
 
@@ -288,8 +1047,135 @@ public class TapeView extends View {
     }
 
 
+    /**
+     * 刻度文字的格式化方式，结果会被缓存，同一个数值需要始终返回相同的文字
+     */
+    public interface LabelFormatter {
+        /**
+         * @param value 以最小单位表示的数值
+         */
+        String format(long value);
+    }
+
+
+    /**
+     * 性能统计，在主线程回调，实现需要尽快返回，避免影响绘制
+     */
+    public interface MetricsSink {
+        /**
+         * 每一帧onDraw结束时回调
+         *
+         * @param drawNanos 这一帧onDraw的耗时
+         * @param divisions 通过drawLines画出的刻度数，分块缓存模式下为0
+         * @param labels    画出的刻度文字数，包括这一帧重新渲染的块中的文字
+         * @param tiles     分块缓存模式下画出的块数
+         */
+        void onFrameDrawn(long drawNanos, int divisions, int labels, int tiles);
+
+        /**
+         * 惯性滑动或者吸附动画结束并对齐到刻度时回调
+         *
+         * @param durationMillis 从开始滑动到停止的时长
+         * @param frames         动画经过的帧数
+         * @param snapDistance   最后一段对齐动画的距离，单位px，没有对齐动画时为0
+         */
+        void onScrollSettled(long durationMillis, int frames, float snapDistance);
+    }
+
+
+    /**
+     * 设置性能统计的接收者，为null时不做任何统计
+     */
+    public void setMetricsSink(@Nullable MetricsSink sink) {
+        mMetricsSink = sink;
+        mScrollStartTime = 0;
+    }
+
+    private void onScrollStarted(float snapDistance) {
+        if (null == mMetricsSink) {
+            return;
+        }
+        //惯性滑动结束后的吸附动画算在同一次滑动中
+        if (0 == mScrollStartTime) {
+            mScrollStartTime = SystemClock.uptimeMillis();
+            mScrollFrameCount = 0;
+        }
+        mSnapDistance = snapDistance;
+    }
+
+    private void onScrollSettled() {
+        if (null == mMetricsSink || 0 == mScrollStartTime) {
+            return;
+        }
+        mMetricsSink.onScrollSettled(SystemClock.uptimeMillis() - mScrollStartTime, mScrollFrameCount, mSnapDistance);
+        mScrollStartTime = 0;
+    }
+
+
     public interface OnTapeIndexChangedListener {
-        void onTapeIndexChanged(int index);
+        /**
+         * 当前值变化，调用频率由{@link #setDispatchPolicy(int)}决定
+         *
+         * @param value 以最小单位表示的当前值
+         */
+        void onTapeIndexChanged(long value);
+
+        /**
+         * 滑动停止并且对齐到刻度
+         */
+        void onTapeIndexSettled(long value);
+    }
+
+
+    /**
+     * 设置当前值变化时的通知方式，默认为{@link #DISPATCH_PER_FRAME}，
+     * 停止时的{@link OnTapeIndexChangedListener#onTapeIndexSettled(long)}不受影响
+     *
+     * @param policy {@link #DISPATCH_EVERY_CHANGE}、{@link #DISPATCH_PER_FRAME}或{@link #DISPATCH_SETTLE_ONLY}
+     */
+    public void setDispatchPolicy(int policy) {
+        if (policy != DISPATCH_EVERY_CHANGE && policy != DISPATCH_PER_FRAME && policy != DISPATCH_SETTLE_ONLY) {
+            throw new IllegalArgumentException("unknown dispatch policy: " + policy);
+        }
+        mDispatchPolicy = policy;
+    }
+
+    public int getDispatchPolicy() {
+        return mDispatchPolicy;
+    }
+
+    private void onIndexChanged() {
+        if (mDispatchPolicy == DISPATCH_EVERY_CHANGE) {
+            dispatchIndexChanged();
+        } else if (mDispatchPolicy == DISPATCH_PER_FRAME && !mDispatchPending) {
+            mDispatchPending = true;
+            postOnAnimation(mDispatchRunnable);
+        }
+    }
+
+    private void dispatchIndexChanged() {
+        if (mCurrentIndex == mLastDispatchedIndex) {
+            return;
+        }
+        mLastDispatchedIndex = mCurrentIndex;
+        long value = getValue();
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onTapeIndexChanged(value);
+        }
+    }
+
+    private void dispatchIndexSettled() {
+        if (mDispatchPending) {
+            mDispatchPending = false;
+            removeCallbacks(mDispatchRunnable);
+        }
+        if (mDispatchPolicy != DISPATCH_SETTLE_ONLY) {
+            dispatchIndexChanged();
+        }
+        long value = getValue();
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onTapeIndexSettled(value);
+        }
     }
 
 
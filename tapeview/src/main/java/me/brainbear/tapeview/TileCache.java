@@ -0,0 +1,97 @@
+package me.brainbear.tapeview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+/**
+ * 刻度尺分块缓存，每一块是固定宽度的一段刻度尺，高度只覆盖刻度和文字，渲染到bitmap后按块号缓存。
+ * 容量固定，满了以后复用最久没有用到的bitmap，滑动过程中不会再创建bitmap。
+ */
+final class TileCache {
+
+    /**
+     * 块号没有对应内容时的标记
+     */
+    private static final long NO_TILE = Long.MIN_VALUE;
+
+    private final int mTileWidth;
+    private final int mTileHeight;
+    private final long[] mTiles;
+    private final Bitmap[] mBitmaps;
+    private final Canvas mCanvas = new Canvas();
+    private final long[] mStamps;
+    private long mClock;
+
+    interface TileRenderer {
+        /**
+         * 把块号为tile的内容画到canvas上，canvas的原点就是这一块的左边缘
+         */
+        void renderTile(Canvas canvas, long tile);
+    }
+
+    TileCache(int capacity, int tileWidth, int tileHeight) {
+        mTileWidth = tileWidth;
+        mTileHeight = tileHeight;
+        mTiles = new long[capacity];
+        mBitmaps = new Bitmap[capacity];
+        mStamps = new long[capacity];
+        invalidate();
+    }
+
+    int getTileWidth() {
+        return mTileWidth;
+    }
+
+    Bitmap obtain(long tile, TileRenderer renderer) {
+        mClock++;
+
+        int eldest = 0;
+        for (int i = 0; i < mTiles.length; i++) {
+            if (mTiles[i] == tile) {
+                mStamps[i] = mClock;
+                return mBitmaps[i];
+            }
+            if (mStamps[i] < mStamps[eldest]) {
+                eldest = i;
+            }
+        }
+
+        Bitmap bitmap = mBitmaps[eldest];
+        if (null == bitmap) {
+            bitmap = Bitmap.createBitmap(mTileWidth, mTileHeight, Bitmap.Config.ARGB_8888);
+            mBitmaps[eldest] = bitmap;
+        } else {
+            bitmap.eraseColor(Color.TRANSPARENT);
+        }
+
+        mCanvas.setBitmap(bitmap);
+        renderer.renderTile(mCanvas, tile);
+        mCanvas.setBitmap(null);
+
+        mTiles[eldest] = tile;
+        mStamps[eldest] = mClock;
+        return bitmap;
+    }
+
+    /**
+     * 丢弃所有块的内容，bitmap保留下来继续复用
+     */
+    void invalidate() {
+        for (int i = 0; i < mTiles.length; i++) {
+            mTiles[i] = NO_TILE;
+            mStamps[i] = 0;
+        }
+        mClock = 0;
+    }
+
+    void recycle() {
+        invalidate();
+        for (int i = 0; i < mBitmaps.length; i++) {
+            if (null != mBitmaps[i]) {
+                mBitmaps[i].recycle();
+                mBitmaps[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package me.brainbear.tapeview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowView;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 在Robolectric的模拟时钟下回放{@link TouchTrace}，统计TapeView的滑动表现。
+ * <p>
+ * 每一帧先分发时间已经到了的触摸事件，控件被invalidate过的话调用computeScroll并画到离屏canvas上，
+ * 再把时钟推进一帧。时钟和OverScroller使用的动画时间是同一个，所以每次回放的结果都完全一样。
+ */
+final class TapeViewScrollHarness {
+
+    static final int FRAME_MILLIS = 16;
+    /**
+     * 最后一个事件之后超过这么多帧还没停下就认为停不下来
+     */
+    static final int MAX_SETTLE_FRAMES = 600;
+    /**
+     * 回放前先把时钟推进一段时间，Robolectric的VelocityTracker会把没写过的时间为0的采样也算进200ms的窗口里，
+     * 离时钟起点太近时算出的速度和之后不一样
+     */
+    private static final int WARM_UP_MILLIS = 1000;
+
+    private final TapeView mView;
+    private final ShadowView mShadowView;
+    private final Canvas mCanvas;
+
+    private int mSettledCount;
+    private long mSettledValue;
+
+    TapeViewScrollHarness(TapeView view, int width, int height) {
+        mView = view;
+        mShadowView = shadowOf(view);
+
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, height);
+        mCanvas = new Canvas(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+
+        view.addOnTapeIndexChangedListener(new TapeView.OnTapeIndexChangedListener() {
+            @Override
+            public void onTapeIndexChanged(long value) {
+            }
+
+            @Override
+            public void onTapeIndexSettled(long value) {
+                mSettledCount++;
+                mSettledValue = value;
+            }
+        });
+    }
+
+    TapeView getView() {
+        return mView;
+    }
+
+    Report replay(TouchTrace trace) {
+        ShadowLooper.idleMainLooper(WARM_UP_MILLIS, TimeUnit.MILLISECONDS);
+        long startTime = SystemClock.uptimeMillis();
+        long downTime = startTime;
+
+        boolean allocationTracking = allocatedBytes() >= 0;
+        int eventIndex = 0;
+        int eventCount = trace.getEvents().size();
+        int frames = 0;
+        int settleFrames = 0;
+        long allocatedBytes = 0;
+        mSettledCount = 0;
+
+        //先画一帧，让刻度文字和分块缓存就位，不算在统计里
+        mShadowView.clearWasInvalidated();
+        draw();
+
+        while (true) {
+            long now = SystemClock.uptimeMillis() - startTime;
+            while (eventIndex < eventCount && trace.getEvents().get(eventIndex).getTime() <= now) {
+                TouchTrace.Event event = trace.getEvents().get(eventIndex);
+                if (event.action == MotionEvent.ACTION_DOWN) {
+                    downTime = startTime + event.getTime();
+                    mSettledCount = 0;
+                }
+                dispatch(event, startTime, downTime);
+                eventIndex++;
+            }
+
+            boolean done = eventIndex == eventCount;
+            if (mShadowView.wasInvalidated()) {
+                mShadowView.clearWasInvalidated();
+
+                long before = allocatedBytes();
+                mView.computeScroll();
+                draw();
+                allocatedBytes += allocatedBytes() - before;
+
+                frames++;
+                if (done) {
+                    settleFrames++;
+                }
+            } else if (done) {
+                break;
+            }
+
+            if (done && settleFrames > MAX_SETTLE_FRAMES) {
+                break;
+            }
+            ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        return new Report(trace.getName(), frames, settleFrames, mView.getValue(),
+                !allocationTracking || frames == 0 ? -1 : allocatedBytes / frames,
+                mSettledCount, mSettledValue);
+    }
+
+    private void draw() {
+        mView.draw(mCanvas);
+    }
+
+    private void dispatch(TouchTrace.Event event, long startTime, long downTime) {
+        float y = mView.getHeight() / 2f;
+        MotionEvent motionEvent = MotionEvent.obtain(downTime, startTime + event.times[0], event.action,
+                event.xs[0], y, 0);
+        for (int i = 1; i < event.times.length; i++) {
+            motionEvent.addBatch(startTime + event.times[i], event.xs[i], y, 1, 1, 0);
+        }
+        mView.dispatchTouchEvent(motionEvent);
+        motionEvent.recycle();
+    }
+
+    /**
+     * 当前线程累计分配的字节数，JVM不支持时返回-1。
+     * Robolectric的shadow自身也会分配对象，这个数只适合和同一环境下的结果对比
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+
+    static final class Report {
+        final String trace;
+        /**
+         * 整个回放过程中画出的帧数
+         */
+        final int framesRendered;
+        /**
+         * 最后一个触摸事件之后到停止画新帧为止的帧数
+         */
+        final int framesToSettle;
+        final long finalValue;
+        /**
+         * 平均每帧computeScroll和draw分配的字节数，JVM不支持统计时为-1
+         */
+        final long bytesPerFrame;
+        /**
+         * 最后一次按下之后收到的onTapeIndexSettled次数和最后的值
+         */
+        final int settledCount;
+        final long settledValue;
+
+        Report(String trace, int framesRendered, int framesToSettle, long finalValue, long bytesPerFrame,
+               int settledCount, long settledValue) {
+            this.trace = trace;
+            this.framesRendered = framesRendered;
+            this.framesToSettle = framesToSettle;
+            this.finalValue = finalValue;
+            this.bytesPerFrame = bytesPerFrame;
+            this.settledCount = settledCount;
+            this.settledValue = settledValue;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: frames=%d, settleFrames=%d, value=%d, bytes/frame=%d, settled=%d",
+                    trace, framesRendered, framesToSettle, finalValue, bytesPerFrame, settledCount);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package me.brainbear.tapeview;
+
+import android.content.Context;
+import android.hardware.SensorManager;
+import android.view.ViewConfiguration;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 回放触摸序列检查滑动的结果、帧数和每帧分配的内存
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class TapeViewScrollTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 200;
+    /**
+     * TapeView默认的刻度间距
+     */
+    private static final int DIVISION_GAP_DP = 30;
+    /**
+     * 吸附动画默认250ms，留出余量
+     */
+    private static final int MAX_SNAP_FRAMES = 30;
+    /**
+     * 每帧computeScroll和draw允许分配的字节数，包括Robolectric的shadow自身的分配
+     */
+    private static final long MAX_BYTES_PER_FRAME = 1024;
+    /**
+     * 分块缓存比直接画线多分配的字节数上限
+     */
+    private static final long TILES_EXTRA_BYTES_PER_FRAME = 64;
+
+    /**
+     * VelocityTracker按最小二乘拟合的速度和序列的名义速度有偏差，惯性距离允许的相对误差
+     */
+    private static final double FLING_DISTANCE_TOLERANCE = 0.05;
+
+    private static final float FLING_FROM_X = 900;
+    private static final float FLING_TO_X = 300;
+    private static final long FLING_DURATION = 96;
+
+    private TapeViewScrollHarness createHarness(boolean tileCacheEnabled, boolean snappingFling) {
+        TapeView view = new TapeView(RuntimeEnvironment.application);
+        view.setValueRange(0, 1000, 1);
+        view.setValue(500);
+        view.setTileCacheEnabled(tileCacheEnabled);
+        view.setSnappingFlingEnabled(snappingFling);
+        return new TapeViewScrollHarness(view, WIDTH, HEIGHT);
+    }
+
+    private TapeViewScrollHarness.Report replay(TouchTrace trace, boolean tileCacheEnabled) {
+        return createHarness(tileCacheEnabled, true).replay(trace);
+    }
+
+    private static float divisionGap() {
+        return DIVISION_GAP_DP * RuntimeEnvironment.application.getResources().getDisplayMetrics().density;
+    }
+
+    private static void assertSettled(TapeViewScrollHarness.Report report) {
+        assertEquals(report.toString(), 1, report.settledCount);
+        assertEquals(report.toString(), report.finalValue, report.settledValue);
+        assertTrue(report.toString(), report.framesToSettle <= TapeViewScrollHarness.MAX_SETTLE_FRAMES);
+        assertTrue(report.toString(), report.finalValue >= 0 && report.finalValue <= 1000);
+    }
+
+    /**
+     * 按OverScroller文档中的样条曲线常数算出的惯性滑动距离，单位px
+     */
+    private static double splineFlingDistance(float velocity) {
+        Context context = RuntimeEnvironment.application;
+        float ppi = context.getResources().getDisplayMetrics().density * 160.0f;
+        double physicalCoeff = SensorManager.GRAVITY_EARTH * 39.37 * ppi * 0.84;
+        double friction = ViewConfiguration.getScrollFriction();
+        double decelerationRate = Math.log(0.78) / Math.log(0.9);
+        double l = Math.log(0.35 * Math.abs(velocity) / (friction * physicalCoeff));
+        return friction * physicalCoeff * Math.exp(decelerationRate / (decelerationRate - 1) * l);
+    }
+
+    /**
+     * 匀速拖动后抬起的名义惯性距离，单位px
+     */
+    private static double expectedFlingDistance() {
+        int maxVelocity = ViewConfiguration.get(RuntimeEnvironment.application).getScaledMaximumFlingVelocity();
+        float velocity = Math.min(maxVelocity, Math.abs(FLING_TO_X - FLING_FROM_X) * 1000 / FLING_DURATION);
+        return splineFlingDistance(velocity);
+    }
+
+    @Test
+    public void drag() {
+        float gap = divisionGap();
+
+        //向左拖动10.4个刻度后停住，抬起时吸附到最近的刻度
+        TapeViewScrollHarness.Report report = replay(TouchTrace.drag(800, 800 - 10.4f * gap, 400), false);
+        assertSettled(report);
+        assertEquals(510, report.finalValue);
+        assertTrue(report.toString(), report.framesToSettle <= MAX_SNAP_FRAMES);
+    }
+
+    @Test
+    public void fling() {
+        TapeViewScrollHarness.Report report = replay(TouchTrace.fling(FLING_FROM_X, FLING_TO_X, FLING_DURATION), false);
+        assertSettled(report);
+        //中点移动拖动的距离加上样条曲线的惯性距离，误差来自速度估算和吸附到最近的刻度
+        float gap = divisionGap();
+        double distance = expectedFlingDistance();
+        double expected = 500 + (Math.abs(FLING_TO_X - FLING_FROM_X) + distance) / gap;
+        double tolerance = distance * FLING_DISTANCE_TOLERANCE / gap + 0.5;
+        assertEquals(report.toString(), expected, report.finalValue, tolerance);
+        assertTrue(report.toString(), report.framesToSettle > 0);
+    }
+
+    @Test
+    public void snappingAndPlainFlingLandTogether() {
+        TouchTrace trace = TouchTrace.fling(FLING_FROM_X, FLING_TO_X, FLING_DURATION);
+        TapeViewScrollHarness.Report snapping = createHarness(false, true).replay(trace);
+        TapeViewScrollHarness.Report plain = createHarness(false, false).replay(trace);
+        assertSettled(snapping);
+        assertSettled(plain);
+        //Robolectric的OverScroller.fling不移动，普通惯性滑动只剩拖动的距离，这时没有可比较的结果
+        float dragEnd = 500 + Math.abs(FLING_TO_X - FLING_FROM_X) / divisionGap();
+        assumeTrue("OverScroller.fling does not move in this environment", plain.finalValue > dragEnd + 1);
+        //吸附惯性滑动直接停在最近的刻度，普通惯性滑动停下后再吸附，两者最多差一个刻度
+        assertEquals(plain.toString(), snapping.finalValue, plain.finalValue, 1);
+    }
+
+    @Test
+    public void flingThenCatch() {
+        TapeViewScrollHarness.Report fling = replay(TouchTrace.fling(FLING_FROM_X, FLING_TO_X, FLING_DURATION), false);
+        TapeViewScrollHarness.Report caught = replay(
+                TouchTrace.flingThenCatch(FLING_FROM_X, FLING_TO_X, FLING_DURATION, 160), false);
+        assertSettled(caught);
+        //拦住以后停在拖动终点和惯性滑动终点之间，并且很快对齐到刻度
+        assertTrue(caught.toString(), caught.finalValue > 520 && caught.finalValue < fling.finalValue);
+        assertTrue(caught.toString(), caught.framesToSettle <= MAX_SNAP_FRAMES);
+    }
+
+    /**
+     * 只检查两种绘制方式下滑动的结果和帧数一致，不比较画出的内容：
+     * Robolectric不会真正光栅化，块的内容也画在TileCache自己的Canvas上
+     */
+    @Test
+    public void tileCacheScrollsLikeDirectDrawing() {
+        TouchTrace[] traces = {
+                TouchTrace.drag(800, 488, 400),
+                TouchTrace.fling(FLING_FROM_X, FLING_TO_X, FLING_DURATION),
+                TouchTrace.flingThenCatch(FLING_FROM_X, FLING_TO_X, FLING_DURATION, 160),
+        };
+        for (TouchTrace trace : traces) {
+            TapeViewScrollHarness.Report lines = replay(trace, false);
+            TapeViewScrollHarness.Report tiles = replay(trace, true);
+            assertSettled(tiles);
+            assertEquals(trace.getName(), lines.finalValue, tiles.finalValue);
+            assertEquals(trace.getName(), lines.framesRendered, tiles.framesRendered);
+        }
+    }
+
+    @Test
+    public void allocationsPerFrameAreBounded() {
+        TouchTrace trace = TouchTrace.fling(FLING_FROM_X, FLING_TO_X, FLING_DURATION);
+        //先各回放一次，类加载和shadow的初始化不算在内
+        replay(trace, false);
+        replay(trace, true);
+
+        TapeViewScrollHarness.Report lines = replay(trace, false);
+        TapeViewScrollHarness.Report tiles = replay(trace, true);
+        assumeTrue("allocation tracking not supported", lines.bytesPerFrame >= 0);
+        assertTrue(lines.toString(), lines.bytesPerFrame <= MAX_BYTES_PER_FRAME);
+        assertTrue(tiles.toString(), tiles.bytesPerFrame <= MAX_BYTES_PER_FRAME);
+        assertTrue(tiles + " vs " + lines, tiles.bytesPerFrame <= lines.bytesPerFrame + TILES_EXTRA_BYTES_PER_FRAME);
+    }
+
+    @Test
+    public void replayIsDeterministic() {
+        TouchTrace trace = TouchTrace.fling(FLING_FROM_X, FLING_TO_X, FLING_DURATION);
+        TapeViewScrollHarness.Report first = replay(trace, false);
+        TapeViewScrollHarness.Report second = replay(trace, false);
+        assertEquals(first.finalValue, second.finalValue);
+        assertEquals(first.framesRendered, second.framesRendered);
+        assertEquals(first.framesToSettle, second.framesToSettle);
+    }
+}
@@ -0,0 +1,183 @@
+package me.brainbear.tapeview;
+
+import android.view.MotionEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一段录制好的单指触摸序列，时间都是相对于序列开始的毫秒数。
+ * 一个MOVE事件可以合并多个采样，和高采样率触摸屏的分发方式一致。
+ */
+final class TouchTrace {
+
+    /**
+     * 触摸屏采样间隔，对应120Hz的采样率
+     */
+    static final int SAMPLE_INTERVAL_MILLIS = 8;
+    /**
+     * 事件分发间隔，每一帧分发一次，中间的采样合并到同一个事件里
+     */
+    static final int EVENT_INTERVAL_MILLIS = 16;
+
+    static final class Event {
+        final int action;
+        /**
+         * 事件中所有采样的时间和位置，最后一个是事件本身的采样，前面的是历史采样
+         */
+        final long[] times;
+        final float[] xs;
+
+        Event(int action, long[] times, float[] xs) {
+            this.action = action;
+            this.times = times;
+            this.xs = xs;
+        }
+
+        long getTime() {
+            return times[times.length - 1];
+        }
+    }
+
+    private final String mName;
+    private final List<Event> mEvents;
+
+    private TouchTrace(String name, List<Event> events) {
+        mName = name;
+        mEvents = Collections.unmodifiableList(events);
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    List<Event> getEvents() {
+        return mEvents;
+    }
+
+    long getDuration() {
+        return mEvents.isEmpty() ? 0 : mEvents.get(mEvents.size() - 1).getTime();
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+
+
+    /**
+     * 按下后匀速拖动一段距离，停住一会儿再抬起，抬起时几乎没有速度
+     */
+    static TouchTrace drag(float fromX, float toX, long duration) {
+        return new Builder("drag")
+                .down(0, fromX)
+                .moveTo(duration, toX)
+                .hold(200)
+                .up()
+                .build();
+    }
+
+    /**
+     * 快速拖动后立即抬起，触发惯性滑动
+     */
+    static TouchTrace fling(float fromX, float toX, long duration) {
+        return new Builder("fling")
+                .down(0, fromX)
+                .moveTo(duration, toX)
+                .up()
+                .build();
+    }
+
+    /**
+     * 快速拖动抬起后，过catchDelay毫秒再按下拦住惯性滑动并抬起
+     */
+    static TouchTrace flingThenCatch(float fromX, float toX, long duration, long catchDelay) {
+        return new Builder("fling-then-catch")
+                .down(0, fromX)
+                .moveTo(duration, toX)
+                .up()
+                .down(duration + catchDelay, toX)
+                .hold(50)
+                .up()
+                .build();
+    }
+
+
+    static final class Builder {
+        private final String mName;
+        private final List<Event> mEvents = new ArrayList<>();
+        private long mTime;
+        private float mX;
+
+        Builder(String name) {
+            mName = name;
+        }
+
+        Builder down(long time, float x) {
+            if (time < mTime) {
+                throw new IllegalArgumentException("time goes backwards: " + time);
+            }
+            mTime = time;
+            mX = x;
+            add(MotionEvent.ACTION_DOWN, new long[]{time}, new float[]{x});
+            return this;
+        }
+
+        /**
+         * 从当前位置匀速移动到x，用时duration毫秒，每隔{@link #EVENT_INTERVAL_MILLIS}分发一个合并了多个采样的事件
+         */
+        Builder moveTo(long duration, float x) {
+            long startTime = mTime;
+            float startX = mX;
+            long endTime = startTime + duration;
+
+            List<Long> times = new ArrayList<>();
+            long eventTime = startTime + EVENT_INTERVAL_MILLIS;
+            for (long t = startTime + SAMPLE_INTERVAL_MILLIS; t < endTime + SAMPLE_INTERVAL_MILLIS; t += SAMPLE_INTERVAL_MILLIS) {
+                long sampleTime = Math.min(t, endTime);
+                times.add(sampleTime);
+                if (sampleTime >= eventTime || sampleTime == endTime) {
+                    addMove(times, startTime, startX, duration, x);
+                    times.clear();
+                    eventTime += EVENT_INTERVAL_MILLIS;
+                }
+            }
+
+            mTime = endTime;
+            mX = x;
+            return this;
+        }
+
+        /**
+         * 手指停在当前位置duration毫秒，期间仍然会有MOVE事件
+         */
+        Builder hold(long duration) {
+            return moveTo(duration, mX);
+        }
+
+        Builder up() {
+            add(MotionEvent.ACTION_UP, new long[]{mTime}, new float[]{mX});
+            return this;
+        }
+
+        TouchTrace build() {
+            return new TouchTrace(mName, new ArrayList<>(mEvents));
+        }
+
+        private void addMove(List<Long> sampleTimes, long startTime, float startX, long duration, float endX) {
+            long[] times = new long[sampleTimes.size()];
+            float[] xs = new float[times.length];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = sampleTimes.get(i);
+                float fraction = duration == 0 ? 1 : (float) (times[i] - startTime) / duration;
+                xs[i] = startX + (endX - startX) * fraction;
+            }
+            add(MotionEvent.ACTION_MOVE, times, xs);
+        }
+
+        private void add(int action, long[] times, float[] xs) {
+            mEvents.add(new Event(action, times, xs));
+        }
+    }
+}
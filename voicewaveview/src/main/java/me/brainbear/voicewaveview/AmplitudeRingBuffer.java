@@ -0,0 +1,137 @@
+package me.brainbear.voicewaveview;
+
+/**
+ * 单生产者单消费者的音量环形缓冲区，只保存float，不加锁也不分配对象。
+ * <p>
+ * 生产者是录音线程，写入PCM时每{@link #PCM_BLOCK_SIZE}个采样算一次均方根作为一个音量值；
+ * 消费者是UI线程，每一帧取出最新的若干个音量值。缓冲区写满后直接覆盖最旧的值，生产者永远不会等待。
+ * 也可以用{@link #writeSamples(short[], int, int)}直接保存PCM采样，供频谱分析使用。
+ */
+final class AmplitudeRingBuffer {
+
+    /**
+     * 多少个PCM采样合成一个音量值，16kHz下为20ms
+     */
+    static final int PCM_BLOCK_SIZE = 320;
+
+    private final float[] levels;
+    private final int mask;
+    /**
+     * 已经写入的音量值总数，只有生产者修改。先写数组再写这个值，消费者读到这个值时前面的数组内容一定可见
+     */
+    private volatile long writeCount;
+
+    /**
+     * 以下只在生产者线程使用，累计当前还没凑满一块的PCM采样
+     */
+    private double blockSquareSum;
+    private int blockSampleCount;
+
+    /**
+     * @param capacity 最多保留的音量值个数，向上取整到2的幂
+     */
+    AmplitudeRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        levels = new float[size];
+        mask = size - 1;
+    }
+
+    long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * 写入一个音量值，只能在生产者线程调用
+     */
+    void write(float level) {
+        long count = writeCount;
+        levels[(int) (count & mask)] = level;
+        writeCount = count + 1;
+    }
+
+    /**
+     * 写入16位PCM，范围映射到[-1, 1]，只能在生产者线程调用
+     */
+    void writePcm(short[] pcm, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            float sample = pcm[i] / 32768f;
+            addPcmSample(sample);
+        }
+    }
+
+    /**
+     * 写入范围为[-1, 1]的浮点PCM，只能在生产者线程调用
+     */
+    void writePcm(float[] pcm, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            addPcmSample(pcm[i]);
+        }
+    }
+
+    /**
+     * 不合成音量值，直接写入映射到[-1, 1]的16位PCM采样，只能在生产者线程调用
+     */
+    void writeSamples(short[] pcm, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            write(pcm[i] / 32768f);
+        }
+    }
+
+    /**
+     * 不合成音量值，直接写入范围为[-1, 1]的浮点PCM采样，只能在生产者线程调用
+     */
+    void writeSamples(float[] pcm, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            write(pcm[i]);
+        }
+    }
+
+    private void addPcmSample(float sample) {
+        blockSquareSum += sample * sample;
+        blockSampleCount++;
+        if (blockSampleCount == PCM_BLOCK_SIZE) {
+            write((float) Math.sqrt(blockSquareSum / PCM_BLOCK_SIZE));
+            blockSquareSum = 0;
+            blockSampleCount = 0;
+        }
+    }
+
+    /**
+     * 取出最新的count个音量值，out[0]是最新的，还没写入过的位置填0，只能在消费者线程调用
+     *
+     * @return 取出时的写入总数，和上一次的返回值相同说明没有新数据
+     */
+    long readLatest(float[] out, int count) {
+        count = Math.min(count, levels.length);
+        while (true) {
+            long end = writeCount;
+            for (int i = 0; i < count; i++) {
+                long index = end - 1 - i;
+                out[i] = index < 0 ? 0 : levels[(int) (index & mask)];
+            }
+            //读的过程中生产者写了太多，最旧的几个值可能已经被覆盖，重新读一次
+            if (writeCount - end <= levels.length - count) {
+                return end;
+            }
+        }
+    }
+
+    /**
+     * 按时间顺序取出第from个之后的音量值，多于out长度或者已经被覆盖的旧值会被跳过，只能在消费者线程调用
+     *
+     * @return 取出时的写入总数，取出的个数为min(返回值 - from, out.length)，下一次从返回值开始取
+     */
+    long readSince(long from, float[] out) {
+        while (true) {
+            long end = writeCount;
+            int count = (int) Math.min(Math.max(0, end - from), Math.min(out.length, levels.length));
+            long start = end - count;
+            for (int i = 0; i < count; i++) {
+                out[i] = levels[(int) ((start + i) & mask)];
+            }
+            if (writeCount - end <= levels.length - count) {
+                return end;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package me.brainbear.voicewaveview;
+
+/**
+ * 每根线各自的包络，目标值变化时按起音和释音时间平滑地跟随。
+ * <p>
+ * 目标值、当前值和空闲动画的相位放在三个平行的float数组里，每一帧用一个循环更新所有线。
+ * 平滑系数按两帧之间实际经过的时间计算，掉帧时结果和没掉帧一样。
+ */
+final class BarEnvelope {
+
+    /**
+     * 当前值和目标值相差小于这个值时认为已经跟上，范围是[0, 1]
+     */
+    private static final float SETTLED_THRESHOLD = 0.001f;
+
+    private float[] targets = new float[0];
+    private float[] levels = new float[0];
+    /**
+     * 空闲动画中每根线的相位，单位是周期
+     */
+    private float[] phases = new float[0];
+
+    private float attackMillis = 40;
+    private float decayMillis = 200;
+    private long lastFrameTime = -1;
+
+    /**
+     * 修改线的数量，相位恢复成默认的相邻线相差半个周期
+     */
+    void setSize(int size) {
+        if (targets.length == size) {
+            return;
+        }
+        targets = new float[size];
+        levels = new float[size];
+        phases = new float[size];
+        resetPhases();
+        lastFrameTime = -1;
+    }
+
+    /**
+     * 从中间往两边，成对的线相位相同，相邻的一对相差半个周期，奇数根时中间那根和第二对相同
+     */
+    void resetPhases() {
+        int size = phases.length;
+        int half = size / 2;
+        for (int i = 0; i < size; i++) {
+            int pair = i < half ? i + 1 : size - i;
+            boolean center = i >= half && i < size - half;
+            phases[i] = center || pair % 2 == 0 ? 0 : 0.5f;
+        }
+    }
+
+    void setPhase(int index, float phase) {
+        phases[index] = phase - (float) Math.floor(phase);
+    }
+
+    float getPhase(int index) {
+        return phases[index];
+    }
+
+    void setAttackMillis(float millis) {
+        attackMillis = millis;
+    }
+
+    float getAttackMillis() {
+        return attackMillis;
+    }
+
+    void setDecayMillis(float millis) {
+        decayMillis = millis;
+    }
+
+    float getDecayMillis() {
+        return decayMillis;
+    }
+
+    /**
+     * 目标值数组，调用方直接写入后再调用{@link #update(long)}
+     */
+    float[] getTargets() {
+        return targets;
+    }
+
+    /**
+     * 平滑后的当前值
+     */
+    float[] getLevels() {
+        return levels;
+    }
+
+    /**
+     * 把目标值和当前值都设置成空闲动画的三角波，每根线加上各自的相位。
+     * 空闲动画不经过起音和释音的平滑，每根线在0到1之间完整、对称地摆动
+     *
+     * @param cycles    动画从开始经过的周期数
+     * @param frameTime 这一帧的时间，单位ms，之后切换到实时数据时从这里开始平滑
+     */
+    void setIdleLevels(double cycles, long frameTime) {
+        float base = (float) (cycles - Math.floor(cycles));
+        for (int i = 0; i < targets.length; i++) {
+            float x = base + phases[i];
+            x -= (int) x;
+            //相位0时从1降到0再回到1
+            targets[i] = Math.abs(2 * x - 1);
+            levels[i] = targets[i];
+        }
+        lastFrameTime = frameTime;
+    }
+
+    /**
+     * 按照和上一帧的时间差让当前值靠近目标值，第一帧直接取目标值
+     *
+     * @param frameTime 这一帧的时间，单位ms
+     * @return 还有没跟上目标值的线时返回true
+     */
+    boolean update(long frameTime) {
+        if (lastFrameTime < 0) {
+            System.arraycopy(targets, 0, levels, 0, targets.length);
+            lastFrameTime = frameTime;
+            return false;
+        }
+        long dt = Math.max(0, frameTime - lastFrameTime);
+        lastFrameTime = frameTime;
+
+        float attack = smoothing(dt, attackMillis);
+        float decay = smoothing(dt, decayMillis);
+        float[] targets = this.targets;
+        float[] levels = this.levels;
+        float remaining = 0;
+        for (int i = 0; i < levels.length; i++) {
+            float delta = targets[i] - levels[i];
+            levels[i] += delta * (delta > 0 ? attack : decay);
+            remaining = Math.max(remaining, Math.abs(targets[i] - levels[i]));
+        }
+        return remaining > SETTLED_THRESHOLD;
+    }
+
+    /**
+     * 一阶低通在dt时间内靠近目标的比例
+     */
+    private static float smoothing(long dt, float timeConstant) {
+        return timeConstant <= 0 ? 1 : (float) (1 - Math.exp(-dt / timeConstant));
+    }
+}
@@ -0,0 +1,184 @@
+package me.brainbear.voicewaveview;
+
+/**
+ * 实数输入的FFT频谱分析，结果按对数频率分成若干个频段，每个频段输出[0, 1]的强度。
+ * <p>
+ * N点实数FFT通过N/2点复数FFT再拆分得到。窗函数、旋转因子和位反转表都在构造时算好，
+ * 所有缓冲区都复用，{@link #analyze(float[], float[])}不分配任何对象。不是线程安全的。
+ */
+final class SpectrumAnalyzer {
+
+    static final int MIN_FFT_SIZE = 256;
+    static final int MAX_FFT_SIZE = 8192;
+
+    /**
+     * 强度为0对应的分贝数，满幅正弦波为0dB
+     */
+    private static final float FLOOR_DB = -60f;
+
+    private final int fftSize;
+    private final int half;
+
+    /**
+     * Hann窗
+     */
+    private final float[] window;
+    /**
+     * cos(2πk/N)和sin(2πk/N)，k小于N/2，N/2点复数FFT的旋转因子按步长2取用
+     */
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] bitReverse;
+    /**
+     * 乘以FFT的幅值后，满幅正弦波所在的频点为1
+     */
+    private final float magnitudeScale;
+
+    private final float[] re;
+    private final float[] im;
+    private final float[] magnitudes;
+
+    private int[] bandStart = new int[0];
+    private int[] bandEnd = new int[0];
+
+    SpectrumAnalyzer(int fftSize) {
+        if (fftSize < MIN_FFT_SIZE || fftSize > MAX_FFT_SIZE || Integer.bitCount(fftSize) != 1) {
+            throw new IllegalArgumentException("fftSize must be a power of two in ["
+                    + MIN_FFT_SIZE + ", " + MAX_FFT_SIZE + "]: " + fftSize);
+        }
+        this.fftSize = fftSize;
+        this.half = fftSize / 2;
+
+        window = new float[fftSize];
+        double windowSum = 0;
+        for (int i = 0; i < fftSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (fftSize - 1)));
+            windowSum += window[i];
+        }
+        magnitudeScale = (float) (2 / windowSum);
+
+        cos = new float[half];
+        sin = new float[half];
+        for (int k = 0; k < half; k++) {
+            cos[k] = (float) Math.cos(2 * Math.PI * k / fftSize);
+            sin[k] = (float) Math.sin(2 * Math.PI * k / fftSize);
+        }
+
+        bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+
+        re = new float[half];
+        im = new float[half];
+        magnitudes = new float[half + 1];
+    }
+
+    int getFftSize() {
+        return fftSize;
+    }
+
+    int getBandCount() {
+        return bandStart.length;
+    }
+
+    /**
+     * 在minFrequency到maxFrequency之间按对数均分出count个频段，每个频段至少包含一个频点
+     */
+    void setBands(int count, int sampleRate, float minFrequency, float maxFrequency) {
+        if (bandStart.length != count) {
+            bandStart = new int[count];
+            bandEnd = new int[count];
+        }
+        float nyquist = sampleRate / 2f;
+        maxFrequency = Math.min(maxFrequency, nyquist);
+        minFrequency = Math.max(Math.min(minFrequency, maxFrequency), (float) sampleRate / fftSize);
+
+        double ratio = Math.log(maxFrequency / minFrequency);
+        int start = binOf(minFrequency, sampleRate);
+        for (int i = 0; i < count; i++) {
+            int end = binOf((float) (minFrequency * Math.exp(ratio * (i + 1) / count)), sampleRate);
+            start = Math.min(start, half);
+            end = Math.min(Math.max(end, start + 1), half + 1);
+            bandStart[i] = start;
+            bandEnd[i] = end;
+            start = end;
+        }
+    }
+
+    private int binOf(float frequency, int sampleRate) {
+        return Math.round(frequency * fftSize / sampleRate);
+    }
+
+    /**
+     * @param samples 最新的{@link #getFftSize()}个采样，samples[0]是最新的
+     * @param levels  输出每个频段的强度，长度不小于{@link #getBandCount()}
+     */
+    void analyze(float[] samples, float[] levels) {
+        //按时间顺序加窗，偶数位放实部，奇数位放虚部，同时完成位反转
+        int last = fftSize - 1;
+        for (int m = 0; m < half; m++) {
+            int t = 2 * m;
+            int j = bitReverse[m];
+            re[j] = samples[last - t] * window[t];
+            im[j] = samples[last - t - 1] * window[t + 1];
+        }
+
+        fft();
+
+        //由N/2点复数FFT的结果拆出N点实数FFT的前N/2+1个频点
+        for (int k = 0; k <= half; k++) {
+            int a = k == half ? 0 : k;
+            int b = k == 0 ? 0 : half - k;
+            float zr = re[a];
+            float zi = im[a];
+            float cr = re[b];
+            float ci = -im[b];
+
+            float er = (zr + cr) / 2;
+            float ei = (zi + ci) / 2;
+            float or = (zi - ci) / 2;
+            float oi = -(zr - cr) / 2;
+
+            float c = k == half ? -1 : cos[k];
+            float s = k == half ? 0 : sin[k];
+            float xr = er + c * or + s * oi;
+            float xi = ei + c * oi - s * or;
+            magnitudes[k] = (float) Math.sqrt(xr * xr + xi * xi) * magnitudeScale;
+        }
+
+        for (int i = 0; i < bandStart.length; i++) {
+            float peak = 0;
+            for (int k = bandStart[i]; k < bandEnd[i]; k++) {
+                peak = Math.max(peak, magnitudes[k]);
+            }
+            float db = peak > 0 ? (float) (20 * Math.log10(peak)) : FLOOR_DB;
+            levels[i] = Math.max(0, Math.min(1, (db - FLOOR_DB) / -FLOOR_DB));
+        }
+    }
+
+    /**
+     * 原地的基2复数FFT，输入已经按位反转排好
+     */
+    private void fft() {
+        for (int size = 2; size <= half; size <<= 1) {
+            int step = fftSize / size;
+            int halfSize = size / 2;
+            for (int start = 0; start < half; start += size) {
+                for (int j = 0; j < halfSize; j++) {
+                    float wr = cos[j * step];
+                    float wi = -sin[j * step];
+                    int p = start + j;
+                    int q = p + halfSize;
+                    float tr = wr * re[q] - wi * im[q];
+                    float ti = wr * im[q] + wi * re[q];
+                    re[q] = re[p] - tr;
+                    im[q] = im[p] - ti;
+                    re[p] += tr;
+                    im[p] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package me.brainbear.voicewaveview;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 在后台线程定时对最新的PCM采样做频谱分析，结果通过两块缓冲区交替输出给UI线程。
+ * <p>
+ * 后台线程写完一帧后再更新序号，UI线程按序号读取对应的缓冲区，读完发现后台线程已经开始写同一块时重读，
+ * 双方都不加锁。没有新的采样时不做分析，暂停时线程一直等待，直到恢复或者停止。
+ */
+final class SpectrumWorker implements Runnable {
+
+    /**
+     * 每秒最多分析的次数
+     */
+    private static final int ANALYZE_PER_SECOND = 60;
+
+    private final AmplitudeRingBuffer input;
+    /**
+     * 每发布一帧后在后台线程调用
+     */
+    private final Runnable onPublished;
+    private final SpectrumAnalyzer analyzer;
+    private final float[] samples;
+    private final float[][] frames = new float[2][];
+    /**
+     * 最新一帧的序号，这一帧保存在frames[published & 1]里，还没有结果时为-1
+     */
+    private volatile long published = -1;
+
+    private volatile Thread thread;
+    private volatile boolean paused;
+    /**
+     * 最近一次分析时输入的写入总数
+     */
+    private volatile long analyzedCount = -1;
+
+    SpectrumWorker(AmplitudeRingBuffer input, int fftSize, int bands, int sampleRate,
+                   float minFrequency, float maxFrequency, Runnable onPublished) {
+        this.input = input;
+        this.onPublished = onPublished;
+        analyzer = new SpectrumAnalyzer(fftSize);
+        analyzer.setBands(bands, sampleRate, minFrequency, maxFrequency);
+        samples = new float[fftSize];
+        frames[0] = new float[bands];
+        frames[1] = new float[bands];
+    }
+
+    int getBandCount() {
+        return analyzer.getBandCount();
+    }
+
+    void start() {
+        if (null == thread) {
+            thread = new Thread(this, "VoiceWaveSpectrum");
+            thread.start();
+        }
+    }
+
+    void stop() {
+        Thread t = thread;
+        thread = null;
+        if (null != t) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * View暂停动画时不再分析，线程保留，恢复时不需要重新创建分析器
+     */
+    void setPaused(boolean paused) {
+        this.paused = paused;
+        Thread t = thread;
+        if (!paused && null != t) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    public void run() {
+        long interval = 1000000000L / ANALYZE_PER_SECOND;
+        while (thread == Thread.currentThread()) {
+            if (paused) {
+                LockSupport.park(this);
+                continue;
+            }
+            long count = input.getWriteCount();
+            if (count != analyzedCount) {
+                analyzedCount = input.readLatest(samples, samples.length);
+                long next = published + 1;
+                analyzer.analyze(samples, frames[(int) (next & 1)]);
+                published = next;
+                onPublished.run();
+            }
+            LockSupport.parkNanos(interval);
+        }
+    }
+
+    /**
+     * 输入中还有没分析过的采样
+     */
+    boolean hasPendingInput() {
+        return input.getWriteCount() != analyzedCount;
+    }
+
+    /**
+     * 最新一帧的序号，还没有结果时为-1
+     */
+    long getFrame() {
+        return published;
+    }
+
+    /**
+     * 取出最新的频谱，只能在一个线程调用
+     *
+     * @return 取出的这一帧的序号，还没有结果时返回-1，out不变
+     */
+    long read(float[] out) {
+        while (true) {
+            long frame = published;
+            if (frame < 0) {
+                return frame;
+            }
+            float[] levels = frames[(int) (frame & 1)];
+            System.arraycopy(levels, 0, out, 0, levels.length);
+            //后台线程要在发布下一帧之后才会写这一块，序号没变说明读到的是完整的一帧
+            if (published == frame) {
+                return frame;
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package me.brainbear.voicewaveview;
+
+import java.util.Random;
+
+/**
+ * 模拟说话声音的16位PCM音源，用来在没有麦克风的环境下测试和演示{@link VoiceWaveView}的实时模式。
+ * <p>
+ * 声音由若干个长短不一的音节和音节之间的停顿组成，每个音节是带包络的基频加两个泛音。
+ * 同样的种子产生同样的数据。
+ */
+public class SyntheticVoiceSource {
+
+    private static final int MIN_SYLLABLE_MILLIS = 80;
+    private static final int MAX_SYLLABLE_MILLIS = 300;
+    private static final int MAX_PAUSE_MILLIS = 250;
+
+    private final int sampleRate;
+    private final Random random;
+
+    private double phase;
+    private double frequency;
+    private float amplitude;
+    /**
+     * 当前音节或停顿剩下的采样数和总采样数，amplitude为0时是停顿
+     */
+    private int segmentRemaining;
+    private int segmentLength;
+
+    private volatile Thread thread;
+
+    public SyntheticVoiceSource(int sampleRate, long seed) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        this.sampleRate = sampleRate;
+        this.random = new Random(seed);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 和AudioRecord.read一样把PCM写入buffer，总是写满length个采样
+     *
+     * @return 写入的采样数
+     */
+    public int read(short[] buffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (segmentRemaining == 0) {
+                nextSegment();
+            }
+            float envelope = (float) Math.sin(Math.PI * (segmentLength - segmentRemaining) / segmentLength);
+            double sample = Math.sin(phase) + 0.5 * Math.sin(2 * phase) + 0.25 * Math.sin(3 * phase);
+            buffer[i] = (short) (sample / 1.75 * amplitude * envelope * Short.MAX_VALUE);
+
+            phase += 2 * Math.PI * frequency / sampleRate;
+            if (phase > 2 * Math.PI) {
+                phase -= 2 * Math.PI;
+            }
+            segmentRemaining--;
+        }
+        return length;
+    }
+
+    private void nextSegment() {
+        boolean pause = amplitude > 0 && random.nextBoolean();
+        int millis;
+        if (pause) {
+            amplitude = 0;
+            millis = random.nextInt(MAX_PAUSE_MILLIS) + 1;
+        } else {
+            amplitude = 0.2f + 0.8f * random.nextFloat();
+            frequency = 100 + 200 * random.nextDouble();
+            millis = MIN_SYLLABLE_MILLIS + random.nextInt(MAX_SYLLABLE_MILLIS - MIN_SYLLABLE_MILLIS);
+        }
+        segmentLength = Math.max(1, sampleRate * millis / 1000);
+        segmentRemaining = segmentLength;
+    }
+
+
+    /**
+     * 在后台线程按真实速度产生声音，每20ms写入一次view
+     */
+    public synchronized void start(final VoiceWaveView view) {
+        if (null != thread) {
+            return;
+        }
+        thread = new Thread("SyntheticVoiceSource") {
+            @Override
+            public void run() {
+                short[] buffer = new short[sampleRate / 50];
+                long interval = 20;
+                long next = System.currentTimeMillis();
+                while (thread == this) {
+                    read(buffer, 0, buffer.length);
+                    view.writePcm(buffer, 0, buffer.length);
+
+                    next += interval;
+                    long sleep = next - System.currentTimeMillis();
+                    if (sleep > 0) {
+                        try {
+                            Thread.sleep(sleep);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }
+        };
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        Thread t = thread;
+        thread = null;
+        if (null != t) {
+            t.interrupt();
+        }
+    }
+}
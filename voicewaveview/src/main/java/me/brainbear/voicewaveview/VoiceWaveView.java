@@ -1,18 +1,21 @@
 package me.brainbear.voicewaveview;
 
-import android.animation.ObjectAnimator;
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.ColorInt;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.View;
-import android.view.animation.LinearInterpolator;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import me.brainbear.frameclock.ViewFrameDriver;
 
 /**
  * Created by brainBear on 2018/7/25.
@@ -20,10 +23,27 @@ import android.view.animation.LinearInterpolator;
 
 public class VoiceWaveView extends View {
 
+    /**
+     * 实时模式最多保留的音量值个数
+     */
+    private static final int AMPLITUDE_CAPACITY = 1024;
+
+    /**
+     * 实时模式下显示音量，中间是最新的音量，越往两边越旧
+     */
+    public static final int STREAM_LEVELS = 0;
+    /**
+     * 实时模式下显示频谱，从左到右是从低到高的对数频段，需要通过writePcm写入录音数据
+     */
+    public static final int STREAM_SPECTRUM = 1;
+    /**
+     * 实时模式下显示滚动的音量历史波形，最新的在最右边
+     */
+    public static final int STREAM_HISTORY = 2;
+
     private int lines = 5;
     private Paint mPaint;
 
-    private int heightOffset;
     /**
      * 线最长长度
      */
@@ -43,7 +63,120 @@ public class VoiceWaveView extends View {
     private int lineWidth;
     @ColorInt
     private int lineColor;
-    private ValueAnimator valueAnimator;
+    /**
+     * 每根线的目标长度和平滑后的长度，范围[0, 1]
+     */
+    private final BarEnvelope envelope = new BarEnvelope();
+    /**
+     * 没有实时数据时的空闲动画周期
+     */
+    private int idlePeriod = 1500;
+    /**
+     * 上一帧平滑后还有线没跟上目标值
+     */
+    private boolean envelopeMoving;
+    /**
+     * 上一帧画出时读到的音量写入总数和频谱序号，没有变化并且包络已经跟上时不需要重绘
+     */
+    private long drawnWriteCount = -1;
+    private long drawnSpectrumFrame = -1;
+
+    /**
+     * 不可见时暂停帧回调和频谱分析，动画时间不包含暂停的时长，恢复后空闲动画和平滑从暂停的位置继续
+     */
+    private final ViewFrameDriver frameDriver = new ViewFrameDriver(this, new ViewFrameDriver.Callback() {
+        @Override
+        public boolean onAnimationFrame(long animationTimeMillis) {
+            if (needsRedraw()) {
+                invalidate();
+                return true;
+            }
+            //频谱还在分析新的采样，等结果出来
+            if (streaming && streamMode == STREAM_SPECTRUM && null != spectrumWorker
+                    && spectrumWorker.hasPendingInput()) {
+                return true;
+            }
+            //没有新数据时停止订阅，先标记再检查一次，标记之前写入的数据和发布的频谱不会漏掉，
+            //之后发布的频谱由分析线程调用postWake重新订阅
+            idle = true;
+            if (needsRedraw()) {
+                idle = false;
+                invalidate();
+                return true;
+            }
+            if (streaming && streamMode == STREAM_SPECTRUM && null != spectrumWorker
+                    && spectrumWorker.hasPendingInput()) {
+                idle = false;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onRunningChanged(boolean running) {
+            if (null != spectrumWorker) {
+                spectrumWorker.setPaused(!running);
+            }
+        }
+    });
+    /**
+     * 实时模式下没有新数据时停止订阅帧时钟，录音线程写入后通过主线程的Handler重新订阅
+     */
+    private volatile boolean idle;
+    private final AtomicBoolean wakePosted = new AtomicBoolean();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable wakeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            wakePosted.set(false);
+            wake();
+        }
+    };
+    /**
+     * 分析线程每发布一帧频谱后调用
+     */
+    private final Runnable spectrumPublished = new Runnable() {
+        @Override
+        public void run() {
+            postWake();
+        }
+    };
+    /**
+     * 所有线的端点，每根线4个数，x坐标在updateBarPositions中算好，y坐标每一帧更新
+     */
+    private float[] barLines = new float[0];
+
+    /**
+     * 实时模式下录音线程写入的音量值，构造时创建，之后不再替换，录音线程随时可以写入
+     */
+    private final AmplitudeRingBuffer amplitudeBuffer = new AmplitudeRingBuffer(AMPLITUDE_CAPACITY);
+    private boolean streaming;
+    private int streamMode = STREAM_LEVELS;
+    /**
+     * 每一帧从缓冲区取出的最新音量值，streamLevels[0]是最新的
+     */
+    private float[] streamLevels = new float[0];
+
+    /**
+     * 频谱模式使用的PCM采样，第一次进入频谱模式时创建，之后不再替换
+     */
+    private volatile AmplitudeRingBuffer spectrumInput;
+    private SpectrumWorker spectrumWorker;
+    /**
+     * 历史波形模式，显示最近historyLength个音量值，只画新增的部分
+     */
+    private WaveHistory history;
+    private int historyLength = 500;
+    private float[] historyLevels;
+    /**
+     * 已经加入历史波形的音量值个数
+     */
+    private long historyConsumed;
+
+    private int spectrumFftSize = 1024;
+    private int spectrumSampleRate = 16000;
+    private float spectrumMinFrequency = 80;
+    private float spectrumMaxFrequency = 8000;
 
 
     public VoiceWaveView(Context context) {
@@ -74,6 +207,9 @@ public class VoiceWaveView extends View {
         mPaint.setStrokeWidth(lineWidth);
         mPaint.setColor(lineColor);
         mPaint.setStrokeCap(Paint.Cap.ROUND);
+        envelope.setSize(lines);
+        updateBarPositions();
+        frameDriver.start();
     }
 
 
@@ -82,62 +218,434 @@ public class VoiceWaveView extends View {
     }
 
     @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateBarPositions();
+        frameDriver.onSizeChanged();
+    }
 
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        //部分系统版本在父类构造函数中就会回调，这时还没有初始化
+        if (null != frameDriver) {
+            frameDriver.onVisibilityChanged();
+        }
+    }
 
-        if (null == valueAnimator) {
-            valueAnimator = ValueAnimator.ofInt(0, maxLength - minLenght, 0);
-            valueAnimator.setRepeatCount(ValueAnimator.INFINITE);
-            valueAnimator.setDuration(1500);
-            valueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    heightOffset = (Integer) animation.getAnimatedValue();
-                    postInvalidate();
-                }
-            });
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        frameDriver.onWindowVisibilityChanged();
+    }
 
-            valueAnimator.setInterpolator(new LinearInterpolator());
-            valueAnimator.start();
-        }
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        //修改属性等原因触发的重绘，可能需要继续播放动画，由帧回调判断是否再次停止
+        wake();
 
-        int width = getWidth();
-        int height = getHeight();
+        if (streaming && streamMode == STREAM_HISTORY) {
+            updateHistory();
+            history.draw(canvas, mPaint, minLenght, maxLength);
+            return;
+        }
 
+        //空闲动画和平滑都按时间计算，掉帧时动画的速度不变
+        long now = frameDriver.getAnimationTime();
+        if (streaming) {
+            updateBarTargets();
+            envelopeMoving = envelope.update(now);
+        } else {
+            envelope.setIdleLevels((double) now / idlePeriod, now);
+            envelopeMoving = false;
+        }
 
-        int _lines = lines;
+        //x坐标已经算好，每一帧只更新每根线的上下端点
+        float centerY = getHeight() / 2f;
+        float[] levels = envelope.getLevels();
+        for (int i = 0; i < lines; i++) {
+            float lineHeight = minLenght + Math.max(0, Math.min(1, levels[i])) * (maxLength - minLenght);
+            barLines[i * 4 + 1] = centerY - lineHeight / 2;
+            barLines[i * 4 + 3] = centerY + lineHeight / 2;
+        }
+        canvas.drawLines(barLines, 0, lines * 4, mPaint);
+    }
 
-        int centerX = width / 2;
-        int xOffset = 0;
 
-        int _lineHeight = maxLength - heightOffset;
-        if (_lines % 2 != 0) {
-            canvas.drawLine(centerX, height / 2 - _lineHeight / 2, centerX, height / 2 + _lineHeight / 2, mPaint);
-            _lines--;
+    /**
+     * 计算每根线的x坐标，从左到右每根线占barLines中的4个数，尺寸或者线的数量、宽度、间隔变化时调用
+     */
+    private void updateBarPositions() {
+        if (barLines.length < lines * 4) {
+            barLines = new float[lines * 4];
+        }
+        float centerX = getWidth() / 2;
+        int half = lines / 2;
+        float xOffset;
+        if (lines % 2 != 0) {
+            barLines[half * 4] = centerX;
+            barLines[half * 4 + 2] = centerX;
             xOffset = lineWidth + lineInterval;
         } else {
             xOffset = lineInterval / 2;
         }
-        for (int i = _lines / 2; i > 0; i--) {
-            if (i % 2 == 0) {
-                _lineHeight = maxLength - heightOffset;
-            } else {
-                _lineHeight = minLenght + heightOffset;
-            }
-            canvas.drawLine(centerX - xOffset, height  / 2 - _lineHeight / 2, centerX - xOffset, height / 2 + _lineHeight / 2, mPaint);
-            canvas.drawLine(centerX + xOffset, height / 2 - _lineHeight / 2, centerX + xOffset, height / 2 + _lineHeight / 2, mPaint);
+        //从中间往两边，左边是第i-1根，右边是倒数第i根
+        for (int i = half; i > 0; i--) {
+            int left = (i - 1) * 4;
+            int right = (lines - i) * 4;
+            barLines[left] = centerX - xOffset;
+            barLines[left + 2] = centerX - xOffset;
+            barLines[right] = centerX + xOffset;
+            barLines[right + 2] = centerX + xOffset;
             xOffset += lineWidth + lineInterval;
         }
     }
 
 
+    private void updateBarTargets() {
+        float[] targets = envelope.getTargets();
+        if (streamMode == STREAM_SPECTRUM) {
+            if (null != spectrumWorker && spectrumWorker.getBandCount() == lines) {
+                drawnSpectrumFrame = spectrumWorker.read(targets);
+            }
+            return;
+        }
+
+        int count = (lines + 1) / 2;
+        if (streamLevels.length < count) {
+            streamLevels = new float[count];
+        }
+        drawnWriteCount = amplitudeBuffer.readLatest(streamLevels, count);
+        //中间是最新的音量，越往两边越旧
+        for (int i = 0; i < lines; i++) {
+            targets[i] = streamLevels[Math.abs(2 * i - (lines - 1)) / 2];
+        }
+    }
+
+    /**
+     * 空闲动画每一帧都要重绘，实时模式只在有新数据或者包络还没跟上时重绘，历史波形不使用包络
+     */
+    private boolean needsRedraw() {
+        if (!streaming) {
+            return true;
+        }
+        switch (streamMode) {
+            case STREAM_SPECTRUM:
+                return envelopeMoving
+                        || null != spectrumWorker && spectrumWorker.getFrame() != drawnSpectrumFrame;
+            case STREAM_HISTORY:
+                return amplitudeBuffer.getWriteCount() != historyConsumed;
+            default:
+                return envelopeMoving || amplitudeBuffer.getWriteCount() != drawnWriteCount;
+        }
+    }
+
+    /**
+     * 进入历史波形时包络不再更新，清掉上一帧留下的状态，回到线条时由第一帧重新计算
+     */
+    private void onStreamContentChanged() {
+        if (streaming && streamMode == STREAM_HISTORY) {
+            envelopeMoving = false;
+        }
+        updateSpectrumWorker(false);
+        invalidate();
+    }
+
+    private void updateHistory() {
+        if (null == history) {
+            history = new WaveHistory();
+            historyLevels = new float[AMPLITUDE_CAPACITY];
+        }
+        if (history.configure(getWidth(), getHeight(), historyLength)) {
+            //尺寸变化后历史清空，用缓冲区里还保留的音量值补上
+            long writeCount = amplitudeBuffer.getWriteCount();
+            historyConsumed = Math.max(0, writeCount - Math.min(AMPLITUDE_CAPACITY, history.getVisibleLevels()));
+        }
+
+        long end = amplitudeBuffer.readSince(historyConsumed, historyLevels);
+        int count = (int) Math.min(end - historyConsumed, historyLevels.length);
+        for (int i = 0; i < count; i++) {
+            history.add(historyLevels[i]);
+        }
+        historyConsumed = end;
+    }
+
+    /**
+     * 设置线的数量
+     */
+    public void setLines(int lines) {
+        if (lines <= 0) {
+            throw new IllegalArgumentException("lines must be positive");
+        }
+        if (this.lines == lines) {
+            return;
+        }
+        this.lines = lines;
+        envelope.setSize(lines);
+        updateBarPositions();
+        //频谱的频段数和线的数量一致
+        updateSpectrumWorker(true);
+        invalidate();
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * 设置线宽，单位px
+     */
+    public void setLineWidth(int lineWidth) {
+        this.lineWidth = lineWidth;
+        mPaint.setStrokeWidth(lineWidth);
+        updateBarPositions();
+        invalidate();
+    }
+
+    public int getLineWidth() {
+        return lineWidth;
+    }
+
+    /**
+     * 设置线之间的间隔，单位px
+     */
+    public void setLineInterval(int lineInterval) {
+        this.lineInterval = lineInterval;
+        updateBarPositions();
+        invalidate();
+    }
+
+    public int getLineInterval() {
+        return lineInterval;
+    }
+
+
+    /**
+     * 设置线变长时的平滑时间，单位ms，越小跟随得越快，0为不平滑，默认40ms
+     */
+    public void setAttackTime(int millis) {
+        envelope.setAttackMillis(Math.max(0, millis));
+    }
+
+    public int getAttackTime() {
+        return (int) envelope.getAttackMillis();
+    }
+
+    /**
+     * 设置线变短时的平滑时间，单位ms，越小跟随得越快，0为不平滑，默认200ms
+     */
+    public void setDecayTime(int millis) {
+        envelope.setDecayMillis(Math.max(0, millis));
+    }
+
+    public int getDecayTime() {
+        return (int) envelope.getDecayMillis();
+    }
+
+    /**
+     * 设置空闲动画的周期，单位ms，默认1500ms
+     */
+    public void setIdlePeriod(int millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("idle period must be positive");
+        }
+        idlePeriod = millis;
+    }
+
+    public int getIdlePeriod() {
+        return idlePeriod;
+    }
+
+    /**
+     * 设置空闲动画中第index根线的相位，单位是周期，默认相邻的两对线相差半个周期。
+     * 修改线的数量后恢复默认值
+     */
+    public void setIdlePhase(int index, float phase) {
+        envelope.setPhase(index, phase);
+    }
+
+    public float getIdlePhase(int index) {
+        return envelope.getPhase(index);
+    }
+
+
+    /**
+     * 切换实时模式，实时模式下线的长度由{@link #writePcm(short[], int, int)}或{@link #writeAmplitude(float)}
+     * 写入的音量决定，不再播放默认的动画
+     */
+    public void setStreamingEnabled(boolean enabled) {
+        if (streaming == enabled) {
+            return;
+        }
+        streaming = enabled;
+        onStreamContentChanged();
+    }
+
+    public boolean isStreamingEnabled() {
+        return streaming;
+    }
+
+    /**
+     * 设置实时模式显示的内容
+     *
+     * @param mode {@link #STREAM_LEVELS}、{@link #STREAM_SPECTRUM}或{@link #STREAM_HISTORY}
+     */
+    public void setStreamMode(int mode) {
+        if (mode != STREAM_LEVELS && mode != STREAM_SPECTRUM && mode != STREAM_HISTORY) {
+            throw new IllegalArgumentException("unknown stream mode: " + mode);
+        }
+        streamMode = mode;
+        onStreamContentChanged();
+    }
+
+    public int getStreamMode() {
+        return streamMode;
+    }
+
+    /**
+     * 设置历史波形模式显示的音量值个数，写入16kHz的PCM时每秒50个，默认500个即10秒
+     */
+    public void setHistoryLength(int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("history length must be positive");
+        }
+        historyLength = length;
+        invalidate();
+    }
+
+    public int getHistoryLength() {
+        return historyLength;
+    }
+
+    /**
+     * 设置频谱模式的FFT点数，需要是256到8192之间的2的幂，默认1024
+     */
+    public void setSpectrumFftSize(int fftSize) {
+        if (fftSize < SpectrumAnalyzer.MIN_FFT_SIZE || fftSize > SpectrumAnalyzer.MAX_FFT_SIZE
+                || Integer.bitCount(fftSize) != 1) {
+            throw new IllegalArgumentException("fftSize must be a power of two in ["
+                    + SpectrumAnalyzer.MIN_FFT_SIZE + ", " + SpectrumAnalyzer.MAX_FFT_SIZE + "]: " + fftSize);
+        }
+        spectrumFftSize = fftSize;
+        updateSpectrumWorker(true);
+    }
+
+    /**
+     * 设置写入的PCM的采样率，默认16000
+     */
+    public void setSpectrumSampleRate(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        spectrumSampleRate = sampleRate;
+        updateSpectrumWorker(true);
+    }
+
+    /**
+     * 设置频谱模式显示的频率范围，在这个范围内按对数均分给每根线，默认80Hz到8000Hz
+     */
+    public void setSpectrumFrequencyRange(float minFrequency, float maxFrequency) {
+        if (minFrequency <= 0 || maxFrequency <= minFrequency) {
+            throw new IllegalArgumentException("invalid frequency range: " + minFrequency + " - " + maxFrequency);
+        }
+        spectrumMinFrequency = minFrequency;
+        spectrumMaxFrequency = maxFrequency;
+        updateSpectrumWorker(true);
+    }
+
+    /**
+     * 只有实时模式显示频谱并且在窗口上时才运行分析线程
+     *
+     * @param restart 参数变化后需要重新创建分析线程
+     */
+    private void updateSpectrumWorker(boolean restart) {
+        boolean running = streaming && streamMode == STREAM_SPECTRUM && isAttachedToWindow();
+        if (null != spectrumWorker && (restart || !running)) {
+            spectrumWorker.stop();
+            spectrumWorker = null;
+        }
+        if (running && null == spectrumWorker) {
+            if (null == spectrumInput) {
+                spectrumInput = new AmplitudeRingBuffer(SpectrumAnalyzer.MAX_FFT_SIZE * 2);
+            }
+            spectrumWorker = new SpectrumWorker(spectrumInput, spectrumFftSize, lines, spectrumSampleRate,
+                    spectrumMinFrequency, spectrumMaxFrequency, spectrumPublished);
+            spectrumWorker.setPaused(!frameDriver.isRunning());
+            spectrumWorker.start();
+        }
+    }
+
+
+    /**
+     * 写入一个范围为[0, 1]的音量值，比如录音数据的均方根。
+     * 可以在录音线程调用，不加锁也不分配对象，但同一时间只能有一个线程写入
+     */
+    public void writeAmplitude(float amplitude) {
+        amplitudeBuffer.write(amplitude);
+        postWake();
+    }
+
+    /**
+     * 写入16位PCM录音数据，每{@link AmplitudeRingBuffer#PCM_BLOCK_SIZE}个采样合成一个音量值。
+     * 可以在录音线程调用，不加锁也不分配对象，但同一时间只能有一个线程写入
+     */
+    public void writePcm(short[] pcm, int offset, int length) {
+        amplitudeBuffer.writePcm(pcm, offset, length);
+        AmplitudeRingBuffer samples = spectrumInput;
+        if (null != samples) {
+            samples.writeSamples(pcm, offset, length);
+        }
+        postWake();
+    }
+
+    /**
+     * 写入范围为[-1, 1]的浮点PCM录音数据，其他同{@link #writePcm(short[], int, int)}
+     */
+    public void writePcm(float[] pcm, int offset, int length) {
+        amplitudeBuffer.writePcm(pcm, offset, length);
+        AmplitudeRingBuffer samples = spectrumInput;
+        if (null != samples) {
+            samples.writeSamples(pcm, offset, length);
+        }
+        postWake();
+    }
+
+    /**
+     * 写入数据或者发布频谱后，停止订阅的View在主线程重新订阅，每次停止后最多发送一次
+     */
+    private void postWake() {
+        if (idle && wakePosted.compareAndSet(false, true)) {
+            mainHandler.post(wakeRunnable);
+        }
+    }
+
+    private void wake() {
+        if (idle) {
+            idle = false;
+            frameDriver.start();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        frameDriver.onAttachedToWindow();
+        updateSpectrumWorker(false);
+    }
+
+
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        if (null != valueAnimator) {
-            valueAnimator.cancel();
-            valueAnimator = null;
+        frameDriver.onDetachedFromWindow();
+        if (null != history) {
+            history.releaseBitmap();
+        }
+        //这时isAttachedToWindow()仍然返回true，直接停止分析线程
+        if (null != spectrumWorker) {
+            spectrumWorker.stop();
+            spectrumWorker = null;
         }
     }
 }
@@ -0,0 +1,152 @@
+package me.brainbear.voicewaveview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+/**
+ * 滚动的音量历史波形，最新的在最右边。
+ * <p>
+ * 历史按屏幕上的列保存在固定容量的环形数组里，每一列是若干个音量值中的最大值。
+ * 列同时画在一张同样按环形使用的ALPHA_8 bitmap上，每一帧只画新增的列，
+ * 再把bitmap分成两段画到屏幕上，每一帧的开销和历史长度无关。
+ */
+final class WaveHistory {
+
+    /**
+     * 往ALPHA_8 bitmap上画列，只用到不透明度
+     */
+    private final Paint columnPaint = new Paint();
+    /**
+     * 把bitmap画到屏幕上，ALPHA_8 bitmap按这个paint的颜色显示
+     */
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint clearPaint = new Paint();
+    private final Rect src = new Rect();
+    private final Rect dst = new Rect();
+
+    private int width;
+    private int height;
+    private int historyLength;
+
+    private int columnWidth;
+    private int levelsPerColumn;
+    /**
+     * 环形数组，第n列保存在columns[n % columns.length]
+     */
+    private float[] columns = new float[0];
+    private long columnCount;
+    private float pendingPeak;
+    private int pendingLevels;
+
+    private Bitmap bitmap;
+    private final Canvas bitmapCanvas = new Canvas();
+    /**
+     * 已经画到bitmap上的列数
+     */
+    private long drawnColumns;
+
+    WaveHistory() {
+        clearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    }
+
+    /**
+     * @return 尺寸或者历史长度变化后返回true，此时之前的历史已经清空
+     */
+    boolean configure(int width, int height, int historyLength) {
+        if (this.width == width && this.height == height && this.historyLength == historyLength) {
+            return false;
+        }
+        this.width = width;
+        this.height = height;
+        this.historyLength = historyLength;
+
+        //音量值比像素少时每个音量值占多个像素，否则每个像素合并多个音量值
+        int w = Math.max(1, width);
+        columnWidth = Math.max(1, w / historyLength);
+        levelsPerColumn = Math.max(1, (historyLength + w - 1) / w);
+        columns = new float[Math.max(1, w / columnWidth)];
+        columnCount = 0;
+        pendingPeak = 0;
+        pendingLevels = 0;
+        releaseBitmap();
+        return true;
+    }
+
+    /**
+     * 屏幕上能显示的音量值个数
+     */
+    int getVisibleLevels() {
+        return columns.length * levelsPerColumn;
+    }
+
+    void add(float level) {
+        pendingPeak = Math.max(pendingPeak, level);
+        pendingLevels++;
+        if (pendingLevels == levelsPerColumn) {
+            columns[(int) (columnCount % columns.length)] = pendingPeak;
+            columnCount++;
+            pendingPeak = 0;
+            pendingLevels = 0;
+        }
+    }
+
+    void draw(Canvas canvas, Paint paint, int minLength, int maxLength) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        int bitmapWidth = columns.length * columnWidth;
+        if (null == bitmap) {
+            bitmap = Bitmap.createBitmap(bitmapWidth, height, Bitmap.Config.ALPHA_8);
+            //新的bitmap需要把保存的历史全部画一遍
+            drawnColumns = Math.max(0, columnCount - columns.length);
+        }
+
+        //只画新增的列，超过一屏的部分已经被覆盖，不用画
+        long first = Math.max(drawnColumns, columnCount - columns.length);
+        if (first < columnCount) {
+            bitmapCanvas.setBitmap(bitmap);
+            for (long n = first; n < columnCount; n++) {
+                drawColumn(n, minLength, maxLength);
+            }
+            bitmapCanvas.setBitmap(null);
+        }
+        drawnColumns = columnCount;
+
+        //bitmap中下一列要写的位置左边是最新的，右边是最旧的，分两段画，最新的对齐到右边
+        int split = (int) (columnCount % columns.length) * columnWidth;
+        int left = width - bitmapWidth;
+        bitmapPaint.setColor(paint.getColor());
+
+        src.set(split, 0, bitmapWidth, height);
+        dst.set(left, 0, left + bitmapWidth - split, height);
+        canvas.drawBitmap(bitmap, src, dst, bitmapPaint);
+        if (split > 0) {
+            src.set(0, 0, split, height);
+            dst.set(left + bitmapWidth - split, 0, width, height);
+            canvas.drawBitmap(bitmap, src, dst, bitmapPaint);
+        }
+    }
+
+    private void drawColumn(long n, int minLength, int maxLength) {
+        int x = (int) (n % columns.length) * columnWidth;
+        bitmapCanvas.drawRect(x, 0, x + columnWidth, height, clearPaint);
+
+        float level = Math.max(0, Math.min(1, columns[(int) (n % columns.length)]));
+        float length = Math.min(height, minLength + level * (maxLength - minLength));
+        float top = (height - length) / 2;
+        //列宽足够时留出1px的间隔
+        int gap = columnWidth > 2 ? 1 : 0;
+        bitmapCanvas.drawRect(x, top, x + columnWidth - gap, top + length, columnPaint);
+    }
+
+    void releaseBitmap() {
+        if (null != bitmap) {
+            bitmap.recycle();
+            bitmap = null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package me.brainbear.voicewaveview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AmplitudeRingBufferTest {
+
+    @Test
+    public void readLatest_newestFirstAndZeroFilled() {
+        AmplitudeRingBuffer buffer = new AmplitudeRingBuffer(8);
+        buffer.write(0.1f);
+        buffer.write(0.2f);
+
+        float[] out = new float[4];
+        assertEquals(2, buffer.readLatest(out, 4));
+        assertArrayEquals(new float[]{0.2f, 0.1f, 0, 0}, out, 0);
+    }
+
+    @Test
+    public void readLatest_afterWrapAround() {
+        AmplitudeRingBuffer buffer = new AmplitudeRingBuffer(4);
+        for (int i = 1; i <= 10; i++) {
+            buffer.write(i);
+        }
+
+        float[] out = new float[3];
+        buffer.readLatest(out, 3);
+        assertArrayEquals(new float[]{10, 9, 8}, out, 0);
+    }
+
+    @Test
+    public void readSince_chronologicalAndSkipsOverwritten() {
+        AmplitudeRingBuffer buffer = new AmplitudeRingBuffer(4);
+        buffer.write(1);
+        buffer.write(2);
+
+        float[] out = new float[4];
+        long end = buffer.readSince(0, out);
+        assertEquals(2, end);
+        assertArrayEquals(new float[]{1, 2}, Arrays.copyOf(out, 2), 0);
+
+        for (int i = 3; i <= 9; i++) {
+            buffer.write(i);
+        }
+        end = buffer.readSince(end, out);
+        assertEquals(9, end);
+        assertArrayEquals(new float[]{6, 7, 8, 9}, out, 0);
+    }
+
+    @Test
+    public void writePcm_oneLevelPerBlock() {
+        AmplitudeRingBuffer buffer = new AmplitudeRingBuffer(8);
+        short[] pcm = new short[AmplitudeRingBuffer.PCM_BLOCK_SIZE * 2 + 10];
+        Arrays.fill(pcm, (short) 16384);
+        for (int i = 0; i < pcm.length; i += 2) {
+            pcm[i] = -16384;
+        }
+
+        buffer.writePcm(pcm, 0, pcm.length);
+        assertEquals(2, buffer.getWriteCount());
+
+        float[] out = new float[1];
+        buffer.readLatest(out, 1);
+        assertEquals(0.5f, out[0], 1e-6f);
+    }
+
+    @Test
+    public void concurrentProducer() throws InterruptedException {
+        final AmplitudeRingBuffer buffer = new AmplitudeRingBuffer(64);
+        final int blocks = 20000;
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                SyntheticVoiceSource source = new SyntheticVoiceSource(16000, 1);
+                short[] pcm = new short[AmplitudeRingBuffer.PCM_BLOCK_SIZE];
+                for (int i = 0; i < blocks; i++) {
+                    source.read(pcm, 0, pcm.length);
+                    buffer.writePcm(pcm, 0, pcm.length);
+                }
+            }
+        };
+        producer.start();
+
+        float[] out = new float[32];
+        long last = 0;
+        while (producer.isAlive() || last < blocks) {
+            long count = buffer.readLatest(out, out.length);
+            assertTrue(count >= last);
+            for (float level : out) {
+                assertTrue(level >= 0 && level <= 1);
+            }
+            last = count;
+        }
+        producer.join();
+        assertEquals(blocks, buffer.getWriteCount());
+    }
+}
@@ -0,0 +1,82 @@
+package me.brainbear.voicewaveview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BarEnvelopeTest {
+
+    private static BarEnvelope envelope(int size, float initial) {
+        BarEnvelope envelope = new BarEnvelope();
+        envelope.setSize(size);
+        for (int i = 0; i < size; i++) {
+            envelope.getTargets()[i] = initial;
+        }
+        envelope.update(0);
+        return envelope;
+    }
+
+    @Test
+    public void droppedFramesGiveSameResult() {
+        BarEnvelope smooth = envelope(1, 0);
+        BarEnvelope dropped = envelope(1, 0);
+        smooth.getTargets()[0] = 1;
+        dropped.getTargets()[0] = 1;
+
+        for (int t = 16; t <= 160; t += 16) {
+            smooth.update(t);
+        }
+        dropped.update(80);
+        dropped.update(160);
+
+        assertEquals(smooth.getLevels()[0], dropped.getLevels()[0], 1e-5f);
+    }
+
+    @Test
+    public void attackFasterThanDecay() {
+        BarEnvelope envelope = envelope(2, 0.5f);
+        envelope.getTargets()[0] = 1;
+        envelope.getTargets()[1] = 0;
+
+        envelope.update(40);
+
+        //一个时间常数后走过1-1/e
+        assertEquals(0.5f + 0.5f * (1 - (float) Math.exp(-1)), envelope.getLevels()[0], 1e-5f);
+        assertTrue(0.5f - envelope.getLevels()[1] < envelope.getLevels()[0] - 0.5f);
+    }
+
+    @Test
+    public void idleTargetsAlternateByPair() {
+        BarEnvelope envelope = new BarEnvelope();
+        envelope.setSize(5);
+
+        envelope.setIdleLevels(0, 0);
+
+        float[] targets = envelope.getTargets();
+        assertEquals(0, targets[0], 0);
+        assertEquals(1, targets[1], 0);
+        assertEquals(1, targets[2], 0);
+        assertEquals(1, targets[3], 0);
+        assertEquals(0, targets[4], 0);
+    }
+
+    @Test
+    public void idleLevelsSwingFullRangeWithoutSmoothing() {
+        BarEnvelope envelope = envelope(3, 0.5f);
+
+        //60fps下一个1500ms的周期，空闲动画不经过平滑，每一帧的当前值就是三角波
+        float min = 1;
+        float max = 0;
+        for (int frame = 0; frame <= 90; frame++) {
+            long t = frame * 1500L / 90;
+            envelope.setIdleLevels(t / 1500.0, t);
+            float level = envelope.getLevels()[1];
+            assertEquals(envelope.getTargets()[1], level, 0);
+            min = Math.min(min, level);
+            max = Math.max(max, level);
+        }
+        assertEquals(0, min, 1e-5f);
+        assertEquals(1, max, 1e-5f);
+    }
+}
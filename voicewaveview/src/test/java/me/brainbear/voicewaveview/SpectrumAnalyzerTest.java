@@ -0,0 +1,74 @@
+package me.brainbear.voicewaveview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpectrumAnalyzerTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    private static float[] sine(int size, double frequency, double amplitude) {
+        float[] samples = new float[size];
+        for (int i = 0; i < size; i++) {
+            //samples[0]是最新的
+            samples[size - 1 - i] = (float) (amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static int bandOf(double frequency, int bands, double min, double max) {
+        return (int) (Math.log(frequency / min) / Math.log(max / min) * bands);
+    }
+
+    @Test
+    public void fullScaleSine_peaksInItsBand() {
+        for (int fftSize : new int[]{1024, 2048, 4096}) {
+            SpectrumAnalyzer analyzer = new SpectrumAnalyzer(fftSize);
+            analyzer.setBands(16, SAMPLE_RATE, 80, 8000);
+            float[] levels = new float[16];
+
+            analyzer.analyze(sine(fftSize, 1000, 1), levels);
+
+            int band = bandOf(1000, 16, 80, 8000);
+            assertEquals("fftSize " + fftSize, 1, levels[band], 0.05f);
+            assertTrue("fftSize " + fftSize, levels[0] < 0.2f);
+            assertTrue("fftSize " + fftSize, levels[15] < 0.2f);
+        }
+    }
+
+    @Test
+    public void quieterSine_lowerLevel() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(1024);
+        analyzer.setBands(8, SAMPLE_RATE, 80, 8000);
+        float[] loud = new float[8];
+        float[] quiet = new float[8];
+
+        analyzer.analyze(sine(1024, 3000, 1), loud);
+        analyzer.analyze(sine(1024, 3000, 0.01), quiet);
+
+        int band = bandOf(3000, 8, 80, 8000);
+        //-40dB在60dB的范围内对应1/3
+        assertEquals(1 / 3f, quiet[band], 0.05f);
+        assertTrue(loud[band] > quiet[band]);
+    }
+
+    @Test
+    public void silence_allZero() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(2048);
+        analyzer.setBands(32, SAMPLE_RATE, 80, 8000);
+        float[] levels = new float[32];
+
+        analyzer.analyze(new float[2048], levels);
+
+        for (float level : levels) {
+            assertEquals(0, level, 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPowerOfTwo() {
+        new SpectrumAnalyzer(1000);
+    }
+}
@@ -0,0 +1,104 @@
+package me.brainbear.view;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Shader;
+
+/**
+ * 一种幅度和周期的波浪形状，被所有相同参数的{@link WaveLayer}共用，路径和平铺用的小图都在第一次使用时生成。
+ * <p>
+ * 波浪线在y=0，x=0处相位为0，先向下再向上，画的时候平移到各层的相位和水位。
+ */
+final class WaveGeometry {
+
+    final int amplitude;
+    /**
+     * 一个完整周期的宽度，是偶数
+     */
+    final int period;
+
+    private final Path path = new Path();
+    private int pathWidth = -1;
+    private int pathHeight = -1;
+
+    private Bitmap tile;
+    private BitmapShader tileShader;
+    private int tileTop;
+
+    /**
+     * 最后一次被使用的绘制序号，不再使用的形状会被清理
+     */
+    int lastUsed;
+
+    WaveGeometry(int amplitude, int period) {
+        this.amplitude = amplitude;
+        this.period = period;
+    }
+
+    /**
+     * 从x=0开始覆盖宽度加一个周期的波浪，底边在y=height，平移到[-period, 0)之间的任意位置和任意水位都能盖住View
+     */
+    Path getPath(int width, int height) {
+        if (width != pathWidth || height != pathHeight) {
+            pathWidth = width;
+            pathHeight = height;
+            buildPath(path, 0, width / period + 2, height);
+        }
+        return path;
+    }
+
+    /**
+     * 把一个周期的波浪画到ALPHA_8的小图上，颜色由画笔决定。
+     * 图的最后一行完全填充，纵向CLAMP后向下延伸成实心的水体，向上延伸成透明
+     */
+    BitmapShader getTileShader() {
+        if (null != tileShader) {
+            return tileShader;
+        }
+        //波浪线在[-|amplitude|/2, |amplitude|/2]之间，上下各留出抗锯齿的余量
+        int halfAmplitude = (Math.abs(amplitude) + 1) / 2;
+        tileTop = -halfAmplitude - 1;
+        int tileHeight = halfAmplitude * 2 + 3;
+
+        tile = Bitmap.createBitmap(period, tileHeight, Bitmap.Config.ALPHA_8);
+        Canvas tileCanvas = new Canvas(tile);
+        tileCanvas.translate(0, -tileTop);
+        //左右多画一个周期，接缝处的抗锯齿和相邻的周期一致
+        Path tilePath = new Path();
+        buildPath(tilePath, -period, 3, tileHeight);
+        tileCanvas.drawPath(tilePath, new Paint(Paint.ANTI_ALIAS_FLAG));
+
+        tileShader = new BitmapShader(tile, Shader.TileMode.REPEAT, Shader.TileMode.CLAMP);
+        return tileShader;
+    }
+
+    /**
+     * 小图顶部相对于波浪线的位置
+     */
+    int getTileTop() {
+        return tileTop;
+    }
+
+    private void buildPath(Path path, int left, int periods, int bottom) {
+        path.reset();
+        path.moveTo(left, 0);
+        for (int i = 0; i < periods; i++) {
+            path.rQuadTo(period / 4, amplitude, period / 2, 0);
+            path.rQuadTo(period / 4, -amplitude, period / 2, 0);
+        }
+        path.lineTo(left + periods * period, bottom);
+        path.lineTo(left, bottom);
+        path.close();
+    }
+
+    void release() {
+        if (null != tile) {
+            tile.recycle();
+            tile = null;
+        }
+        tileShader = null;
+    }
+}
@@ -0,0 +1,82 @@
+package me.brainbear.view;
+
+import android.support.annotation.ColorInt;
+
+/**
+ * {@link WaveProgressView}中的一层波浪，先添加的画在下面。
+ * <p>
+ * 幅度和周期相同的层共用一份缓存的形状，只有颜色、速度和相位不同时每多一层只多一次填充。
+ * 添加到View后修改参数需要调用View的invalidate()。
+ */
+public class WaveLayer {
+
+    @ColorInt
+    private int color;
+    private int amplitude;
+    /**
+     * 小于等于0时为View宽度的一半
+     */
+    private int period = -1;
+    /**
+     * 波浪向右移动一个View宽度所用的时间，单位ms，小于等于0时不移动
+     */
+    private int duration;
+    /**
+     * 波浪向左错开的距离，单位px
+     */
+    private int phase;
+
+    public WaveLayer(@ColorInt int color, int amplitude, int duration) {
+        this.color = color;
+        this.amplitude = amplitude;
+        this.duration = duration;
+    }
+
+    @ColorInt
+    public int getColor() {
+        return color;
+    }
+
+    public void setColor(@ColorInt int color) {
+        this.color = color;
+    }
+
+    public int getAmplitude() {
+        return amplitude;
+    }
+
+    public void setAmplitude(int amplitude) {
+        this.amplitude = amplitude;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(int period) {
+        this.period = period;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public void setDuration(int duration) {
+        this.duration = duration;
+    }
+
+    public int getPhase() {
+        return phase;
+    }
+
+    public void setPhase(int phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * 幅度不为0并且会移动时才需要动画
+     */
+    boolean isAnimating() {
+        return amplitude != 0 && duration > 0;
+    }
+}
@@ -1,20 +1,30 @@
 package me.brainbear.view;
 
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.ColorInt;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
 import android.view.View;
-import android.view.animation.LinearInterpolator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import me.brainbear.frameclock.ViewFrameDriver;
 
 /**
  * Created by brainBear on 2018/8/21.
@@ -22,7 +32,6 @@ import android.view.animation.LinearInterpolator;
 public class WaveProgressView extends View {
 
     Paint mPaint = new Paint();
-    Path mPath = new Path();
 
     private static final int DEFAULT_MAX = 100;
     private static final int DEFAULT_PROGRESS = 50;
@@ -36,33 +45,143 @@ public class WaveProgressView extends View {
     private static final int DEFAULT_WAVE_OFFSET = 150;
     private static final int DEFAULT_STROKE_COLOR = Color.RED;
     private static final int DEFAULT_STROKE_WIDTH = 20;
-
-    private long max;
-    private long progress;
-    private int amplitude;
-    private int period = -1;
-
-    private int frontWaveDuration;
-    private int backWaveDuration;
-
-    private int frontWaveOffset = 0;
-    private int backWaveOffset = 0;
+    private static final int DEFAULT_PROGRESS_SMOOTH_TIME = 150;
+    /**
+     * 水位和目标相差小于这个值时直接到达目标
+     */
+    private static final float LEVEL_SETTLED_THRESHOLD = 0.001f;
+
+    /**
+     * 裁剪的形状
+     */
+    public static final int SHAPE_NONE = 0;
+    public static final int SHAPE_CIRCLE = 1;
+    public static final int SHAPE_ROUND_RECT = 2;
+    public static final int SHAPE_PATH = 3;
+    public static final int SHAPE_MASK = 4;
+
+    /**
+     * 每一层波浪画一条缓存的路径
+     */
+    public static final int RENDER_PATH = 0;
+    /**
+     * 一个周期的波浪画成小图，用REPEAT的BitmapShader填充，每一帧只改变shader的平移。
+     * 使用{@link #setShapeMask(Drawable)}或者非矩形的形状时仍然画路径
+     */
+    public static final int RENDER_TILE = 1;
+
+    /**
+     * 最新设置的最大值和进度，可以在任意线程写入，UI线程每一帧最多读取一次
+     */
+    private volatile long max;
+    private volatile long progress;
+    private final AtomicBoolean mLevelUpdatePosted = new AtomicBoolean();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * 当前显示的水位和要达到的水位，范围[0, 1]，只在UI线程访问
+     */
+    private float mLevel;
+    private float mTargetLevel;
+    private long mLevelFrameTime = -1;
+    private int progressSmoothTime = DEFAULT_PROGRESS_SMOOTH_TIME;
+
+    /**
+     * 所有波浪层，先画前面的，默认是xml中配置的后层和前层
+     */
+    private final ArrayList<WaveLayer> mLayers = new ArrayList<>();
+    /**
+     * 幅度和周期相同的层共用的形状，每次绘制后清理不再使用的
+     */
+    private final ArrayList<WaveGeometry> mGeometries = new ArrayList<>();
+    private int mDrawCount;
+    /**
+     * 所有层共用的动画时间，各层按自己的速度算出位置
+     */
+    private long mWaveTime;
     private boolean waveAnimationEnable;
 
-    @ColorInt
-    private int frontWaveColor;
-    @ColorInt
-    private int backWaveColor;
     @ColorInt
     private int backgroundColor;
-    private int waveOffset;
 
     @ColorInt
     private int strokeColor;
     private int strokeWidth;
-    private ValueAnimator mFrontWaveAnimator;
-    private ValueAnimator mBackWaveAnimator;
-    private PorterDuffXfermode porterDuffXfermode;
+    /**
+     * 所有波浪层的位置和水位都由共享帧时钟的时间算出，每一帧只重绘一次。
+     * 不可见时暂停，动画时间不包含暂停的时长，恢复后波浪从暂停的位置继续
+     */
+    private final ViewFrameDriver mFrameDriver = new ViewFrameDriver(this, new ViewFrameDriver.Callback() {
+        @Override
+        public boolean onAnimationFrame(long frameTime) {
+            boolean levelMoving = updateLevel(frameTime);
+            boolean waving = isWaveAnimating();
+            if (waving) {
+                mWaveTime = frameTime;
+            }
+            if (waving || levelMoving) {
+                invalidate();
+            }
+            return waving || levelMoving;
+        }
+
+        @Override
+        public void onRunningChanged(boolean running) {
+        }
+    });
+    /**
+     * 从任意线程回到主线程，在主线程上改为等到下一帧再读取进度。没有attach时不处理，由onAttachedToWindow重新读取
+     */
+    private final Runnable mScheduleLevel = new Runnable() {
+        @Override
+        public void run() {
+            if (isAttachedToWindow()) {
+                postOnAnimation(mApplyLevel);
+            }
+        }
+    };
+    /**
+     * 在下一帧读取最新的进度，更新目标水位，读取之前的多次修改合并成一次
+     */
+    private final Runnable mApplyLevel = new Runnable() {
+        @Override
+        public void run() {
+            mLevelUpdatePosted.set(false);
+            mTargetLevel = computeLevel();
+            if (mTargetLevel == mLevel) {
+                return;
+            }
+            if (progressSmoothTime <= 0) {
+                mLevel = mTargetLevel;
+                invalidate();
+            } else {
+                mFrameDriver.start();
+            }
+        }
+    };
+    private int shape;
+    private float shapeCornerRadius;
+    private final Path shapePath = new Path();
+    private boolean shapePathSet;
+    private Drawable shapeMask;
+
+    /**
+     * 根据形状生成的边界和遮罩，只在形状或者尺寸变化时更新。
+     * 矩形直接clipRect，其他形状使用mShapeMaskShader
+     */
+    private boolean mShapeDirty = true;
+    private int mShapeWidth = -1;
+    private int mShapeHeight = -1;
+    private final Path mShapePath = new Path();
+    private boolean mShapeHasPath;
+    private boolean mShapeIsRect;
+    private final RectF mShapeRect = new RectF();
+    private Bitmap mShapeMask;
+    private Canvas mShapeMaskCanvas;
+    private final Paint mShapeMaskPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private BitmapShader mShapeMaskShader;
+    private final Matrix mShaderMatrix = new Matrix();
+
+    private int renderMode;
 
     public WaveProgressView(Context context) {
         this(context, null);
@@ -78,24 +197,34 @@ public class WaveProgressView extends View {
 
         max = typedArray.getInt(R.styleable.WaveProgressView_wave_max, DEFAULT_MAX);
         progress = typedArray.getInt(R.styleable.WaveProgressView_wave_progress, DEFAULT_PROGRESS);
-        amplitude = typedArray.getDimensionPixelSize(R.styleable.WaveProgressView_wave_amplitude, DEFAULT_AMPLITUDE);
-        period = typedArray.getDimensionPixelSize(R.styleable.WaveProgressView_wave_period, -1);
-        frontWaveDuration = typedArray.getInt(R.styleable.WaveProgressView_front_wave_duration, DEFAULT_FRONT_WAVE_DURATION);
-        backWaveDuration = typedArray.getInt(R.styleable.WaveProgressView_back_wave_duration, DEFAULT_BACK_WAVE_DURATION);
-        waveOffset = typedArray.getDimensionPixelSize(R.styleable.WaveProgressView_wave_offset, DEFAULT_WAVE_OFFSET);
+        int amplitude = typedArray.getDimensionPixelSize(R.styleable.WaveProgressView_wave_amplitude, DEFAULT_AMPLITUDE);
+        int period = typedArray.getDimensionPixelSize(R.styleable.WaveProgressView_wave_period, -1);
+        int frontWaveDuration = typedArray.getInt(R.styleable.WaveProgressView_front_wave_duration, DEFAULT_FRONT_WAVE_DURATION);
+        int backWaveDuration = typedArray.getInt(R.styleable.WaveProgressView_back_wave_duration, DEFAULT_BACK_WAVE_DURATION);
+        int waveOffset = typedArray.getDimensionPixelSize(R.styleable.WaveProgressView_wave_offset, DEFAULT_WAVE_OFFSET);
         waveAnimationEnable = typedArray.getBoolean(R.styleable.WaveProgressView_wave_animation, DEFAULT_WAVE_ANIMATION_ENABLE);
-        frontWaveColor = typedArray.getColor(R.styleable.WaveProgressView_front_wave_color, DEFAULT_FRONT_WAVE_COLOR);
-        backWaveColor = typedArray.getColor(R.styleable.WaveProgressView_back_wave_color, DEFAULT_BACK_WAVE_COLOR);
+        int frontWaveColor = typedArray.getColor(R.styleable.WaveProgressView_front_wave_color, DEFAULT_FRONT_WAVE_COLOR);
+        int backWaveColor = typedArray.getColor(R.styleable.WaveProgressView_back_wave_color, DEFAULT_BACK_WAVE_COLOR);
         backgroundColor = typedArray.getColor(R.styleable.WaveProgressView_background_color, DEFAULT_BACKGROUND_COLOR);
         strokeColor = typedArray.getColor(R.styleable.WaveProgressView_stroke_color, DEFAULT_STROKE_COLOR);
         strokeWidth = typedArray.getDimensionPixelSize(R.styleable.WaveProgressView_stroke_width, DEFAULT_STROKE_WIDTH);
+        shape = typedArray.getInt(R.styleable.WaveProgressView_wave_shape, SHAPE_NONE);
+        shapeCornerRadius = typedArray.getDimension(R.styleable.WaveProgressView_wave_shape_corner_radius, 0);
+        renderMode = typedArray.getInt(R.styleable.WaveProgressView_wave_render_mode, RENDER_PATH);
         typedArray.recycle();
-        init();
-    }
 
+        mLevel = mTargetLevel = computeLevel();
 
-    private void init() {
-        porterDuffXfermode = new PorterDuffXfermode(PorterDuff.Mode.DST_IN);
+        //后层错开wave_offset，和前层一起组成默认的两层波浪
+        if (waveOffset != 0) {
+            WaveLayer back = new WaveLayer(backWaveColor, amplitude, backWaveDuration);
+            back.setPeriod(period);
+            back.setPhase(waveOffset);
+            mLayers.add(back);
+        }
+        WaveLayer front = new WaveLayer(frontWaveColor, amplitude, frontWaveDuration);
+        front.setPeriod(period);
+        mLayers.add(front);
     }
 
     @Override
@@ -108,167 +237,465 @@ public class WaveProgressView extends View {
         int width = getWidth();
         int height = getHeight();
 
+        int waveHeight = getWaveHeight();
 
-        if (-1 == period) {
-            period = width / 2;
+        //按边界裁剪，不使用离屏图层：没有边界时直接画，矩形用clipRect，
+        //其他形状把边界画成ALPHA_8遮罩作为画笔的shader，保留抗锯齿的边缘
+        updateShape(width, height);
+        BitmapShader maskShader = mShapeMaskShader;
+        int save = canvas.save();
+        if (mShapeIsRect) {
+            canvas.clipRect(mShapeRect);
         }
 
-        int waveHeight = getWaveHeight();
+        mPaint.reset();
+        mPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
+
+        if (Color.alpha(backgroundColor) != 0) {
+            setMaskShader(maskShader, 0, 0);
+            mPaint.setColor(backgroundColor);
+            canvas.drawRect(0, 0, width, height, mPaint);
+        }
+
+        //遮罩本身就是shader，这时只能画路径
+        boolean tile = RENDER_TILE == renderMode && null == maskShader;
+        mDrawCount++;
+        for (int i = 0; i < mLayers.size(); i++) {
+            WaveLayer layer = mLayers.get(i);
+            int period = layer.getPeriod() > 0 ? layer.getPeriod() : width / 2;
+            //按完整的周期缓存，每个周期由两段宽度为period / 2的曲线组成
+            period = period / 2 * 2;
+            if (period <= 0) {
+                continue;
+            }
+            WaveGeometry geometry = obtainGeometry(layer.getAmplitude(), period);
+            int left = getWaveLeft(layer, period, width);
+            mPaint.setColor(layer.getColor());
+            if (tile) {
+                drawWaveTile(canvas, geometry, left, waveHeight);
+            } else {
+                //波浪的形状已经缓存，每一帧只需要平移到当前的相位和水位
+                drawWave(canvas, geometry.getPath(width, height), left, waveHeight, maskShader);
+            }
+        }
+        releaseUnusedGeometries();
+        //画边界，遮罩形状没有边界线
+        if (mShapeHasPath && strokeWidth > 0) {
+            //平铺模式下画笔的shader被替换了，边界线仍然使用遮罩
+            setMaskShader(maskShader, 0, 0);
+            mPaint.setColor(strokeColor);
+            mPaint.setStyle(Paint.Style.STROKE);
+            mPaint.setStrokeWidth(strokeWidth);
+            canvas.drawPath(mShapePath, mPaint);
+        }
+        canvas.restoreToCount(save);
+    }
 
+    /**
+     * 平移画布画出一层波浪，遮罩反向平移，仍然和View对齐
+     */
+    private void drawWave(Canvas canvas, Path wavePath, int dx, int dy, @Nullable BitmapShader maskShader) {
+        canvas.save();
+        canvas.translate(dx, dy);
+        setMaskShader(maskShader, -dx, -dy);
+        canvas.drawPath(wavePath, mPaint);
+        canvas.restore();
+    }
 
-        int layer = canvas.saveLayer(null, null, Canvas.ALL_SAVE_FLAG);
+    /**
+     * 平移遮罩后重新设置给画笔。API 23到25上setLocalMatrix会生成新的native shader，
+     * 已经持有旧shader的画笔不会更新，和{@link #drawWaveTile}一样每次都要重新setShader
+     */
+    private void setMaskShader(@Nullable BitmapShader maskShader, int dx, int dy) {
+        if (null != maskShader) {
+            mShaderMatrix.setTranslate(dx, dy);
+            maskShader.setLocalMatrix(mShaderMatrix);
+        }
+        mPaint.setShader(maskShader);
+    }
 
-        canvas.drawColor(backgroundColor);
+    /**
+     * 波浪起点的x坐标，在[-period, 0)之间
+     */
+    private int getWaveLeft(WaveLayer layer, int period, int width) {
+        int offset = 0;
+        int duration = layer.getDuration();
+        if (waveAnimationEnable && duration > 0) {
+            offset = (int) (mWaveTime % duration * width / duration);
+        }
+        int left = (offset - layer.getPhase()) % period;
+        if (left < 0) {
+            left += period;
+        }
+        return left - period;
+    }
 
-        if (waveOffset != 0) {
-            mPaint.reset();
-            mPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
-            mPaint.setColor(backWaveColor);
+    /**
+     * 只移动shader，用一个矩形填充出整层波浪
+     *
+     * @param left 波浪起点的x坐标，也就是相位
+     */
+    private void drawWaveTile(Canvas canvas, WaveGeometry geometry, int left, int waveHeight) {
+        BitmapShader tileShader = geometry.getTileShader();
+        int top = waveHeight + geometry.getTileTop();
+        mShaderMatrix.setTranslate(left, top);
+        tileShader.setLocalMatrix(mShaderMatrix);
+        mPaint.setShader(tileShader);
+        canvas.drawRect(0, Math.max(0, top), getWidth(), getHeight(), mPaint);
+    }
 
-            int drawCount = (waveOffset + getWidth()) * 2 / period;
-            if (getWidth() * 2 % period > 0) {
-                drawCount++;
+    private WaveGeometry obtainGeometry(int amplitude, int period) {
+        WaveGeometry geometry = null;
+        for (int i = 0; i < mGeometries.size(); i++) {
+            WaveGeometry g = mGeometries.get(i);
+            if (g.amplitude == amplitude && g.period == period) {
+                geometry = g;
+                break;
             }
+        }
+        if (null == geometry) {
+            geometry = new WaveGeometry(amplitude, period);
+            mGeometries.add(geometry);
+        }
+        geometry.lastUsed = mDrawCount;
+        return geometry;
+    }
 
-            mPath.reset();
-            mPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
-            mPath.moveTo(-width - waveOffset + backWaveOffset, waveHeight);
-            for (int i = 0; i < drawCount; i++) {
-                mPath.rQuadTo(period / 4, amplitude, period / 2, 0);
-                mPath.rQuadTo(period / 4, -amplitude, period / 2, 0);
+    private void releaseUnusedGeometries() {
+        for (int i = mGeometries.size() - 1; i >= 0; i--) {
+            WaveGeometry geometry = mGeometries.get(i);
+            if (geometry.lastUsed != mDrawCount) {
+                geometry.release();
+                mGeometries.remove(i);
             }
+        }
+    }
 
-            mPath.lineTo(width + backWaveOffset, height);
-            mPath.lineTo(-width - waveOffset + backWaveOffset, height);
-            mPath.close();
-
-            canvas.drawPath(mPath, mPaint);
+    private void releaseGeometries() {
+        for (int i = 0; i < mGeometries.size(); i++) {
+            mGeometries.get(i).release();
         }
+        mGeometries.clear();
+    }
 
-        mPaint.reset();
-        mPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
-        mPaint.setColor(frontWaveColor);
+    private int getWaveHeight() {
+        return (int) ((1 - mLevel) * getHeight());
+    }
 
-        int drawCount = getWidth() * 2 / period;
-        if (getWidth() * 2 % period > 0) {
-            drawCount++;
+    private float computeLevel() {
+        long max = this.max;
+        if (max <= 0) {
+            return 0;
         }
+        return Math.max(0, Math.min(1, (float) progress / max));
+    }
 
-        mPath.reset();
-        mPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
-        mPath.moveTo(-width + frontWaveOffset, waveHeight);
-        for (int i = 0; i < drawCount; i++) {
-            mPath.rQuadTo(period / 4, amplitude, period / 2, 0);
-            mPath.rQuadTo(period / 4, -amplitude, period / 2, 0);
+    /**
+     * 合并下一帧之前的多次修改，每一帧最多读取一次最新的值。
+     * 先通过主线程的Handler回到主线程，postOnAnimation在API 24以前从其他线程调用时会放进调用线程的队列，永远不会执行
+     */
+    private void postLevelUpdate() {
+        if (mLevelUpdatePosted.compareAndSet(false, true)) {
+            mMainHandler.post(mScheduleLevel);
         }
+    }
 
-        mPath.lineTo(width + frontWaveOffset, height);
-        mPath.lineTo(-width + frontWaveOffset, height);
-        mPath.close();
+    /**
+     * 水位按时间平滑地靠近目标，目标在过程中变化时从当前位置继续
+     *
+     * @return 这一帧水位有变化时返回true
+     */
+    private boolean updateLevel(long frameTime) {
+        if (mLevel == mTargetLevel) {
+            mLevelFrameTime = -1;
+            return false;
+        }
+        if (mLevelFrameTime < 0 || progressSmoothTime <= 0) {
+            mLevelFrameTime = frameTime;
+            if (progressSmoothTime <= 0) {
+                mLevel = mTargetLevel;
+            }
+            return true;
+        }
+        long dt = Math.max(0, frameTime - mLevelFrameTime);
+        mLevelFrameTime = frameTime;
+        mLevel += (mTargetLevel - mLevel) * (float) (1 - Math.exp((double) -dt / progressSmoothTime));
+        if (Math.abs(mTargetLevel - mLevel) < LEVEL_SETTLED_THRESHOLD) {
+            mLevel = mTargetLevel;
+        }
+        return true;
+    }
 
-        canvas.drawPath(mPath, mPaint);
+    private boolean isWaveAnimating() {
+        if (!waveAnimationEnable) {
+            return false;
+        }
+        //幅度为0或者不移动的层没必要执行动画
+        for (int i = 0; i < mLayers.size(); i++) {
+            if (mLayers.get(i).isAnimating()) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        //画边界
-        Path borderShapePath = getBorderShapePath();
-        if (null != borderShapePath) {
-            mPaint.setColor(strokeColor);
-            mPaint.setStyle(Paint.Style.STROKE);
-            mPaint.setStrokeWidth(strokeWidth);
-            canvas.drawPath(borderShapePath, mPaint);
+    private void initAnimation() {
+        if ((isWaveAnimating() || mLevel != mTargetLevel) && !mFrameDriver.isRunning()) {
+            mFrameDriver.start();
         }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mFrameDriver.onAttachedToWindow();
+        //重新读取一次最新的进度，不依赖之前发送的更新
+        mMainHandler.removeCallbacks(mScheduleLevel);
+        removeCallbacks(mApplyLevel);
+        mApplyLevel.run();
+        initAnimation();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mFrameDriver.onDetachedFromWindow();
+        releaseShapeMask();
+        mShapeDirty = true;
+        releaseGeometries();
+    }
 
-        //按边界裁剪
-        Bitmap shapeBitmap = getBorderShapeBitmap();
-        if (null != shapeBitmap) {
-            mPaint.setXfermode(porterDuffXfermode);
-            canvas.drawBitmap(shapeBitmap, 0, 0, mPaint);
-            mPaint.setXfermode(null);
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mFrameDriver.onSizeChanged();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        //部分系统版本在父类构造函数中就会回调，这时还没有初始化
+        if (null != mFrameDriver) {
+            mFrameDriver.onVisibilityChanged();
         }
-        canvas.restoreToCount(layer);
     }
 
-    private int getWaveHeight() {
-        return (int) ((float) (max - progress) / max * getHeight());
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        mFrameDriver.onWindowVisibilityChanged();
     }
 
-    private void initAnimation() {
-        //幅度为0的时候也没必要执行动画
-        if (!waveAnimationEnable || amplitude == 0) {
+
+    /**
+     * 形状或者尺寸变化时重新生成边界和遮罩，遮罩的bitmap尺寸不变时重复使用
+     */
+    private void updateShape(int width, int height) {
+        if (!mShapeDirty && width == mShapeWidth && height == mShapeHeight) {
             return;
         }
-        if (null == mFrontWaveAnimator) {
-            mFrontWaveAnimator = ValueAnimator.ofInt(0, getWidth());
-            mFrontWaveAnimator.setDuration(frontWaveDuration);
-            mFrontWaveAnimator.setRepeatCount(ValueAnimator.INFINITE);
-            mFrontWaveAnimator.setInterpolator(new LinearInterpolator());
-            mFrontWaveAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    frontWaveOffset = (int) animation.getAnimatedValue();
-                    postInvalidate();
-                }
-            });
-            mFrontWaveAnimator.start();
+        mShapeDirty = false;
+        mShapeWidth = width;
+        mShapeHeight = height;
+
+        mShapePath.reset();
+        mShapeHasPath = false;
+        if (width > 0 && height > 0) {
+            switch (shape) {
+                case SHAPE_CIRCLE:
+                    mShapePath.addCircle(width / 2f, height / 2f, Math.min(width, height) / 2f, Path.Direction.CW);
+                    mShapeHasPath = true;
+                    break;
+                case SHAPE_ROUND_RECT:
+                    mShapeRect.set(0, 0, width, height);
+                    mShapePath.addRoundRect(mShapeRect, shapeCornerRadius, shapeCornerRadius, Path.Direction.CW);
+                    mShapeHasPath = true;
+                    break;
+                case SHAPE_PATH:
+                    mShapePath.set(shapePath);
+                    mShapeHasPath = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        mShapeIsRect = mShapeHasPath && mShapePath.isRect(mShapeRect);
+
+        boolean drawMask = SHAPE_MASK == shape && null != shapeMask && width > 0 && height > 0;
+        if (!drawMask && (!mShapeHasPath || mShapeIsRect)) {
+            mShapeMaskShader = null;
+            return;
         }
 
-        if (null == mBackWaveAnimator) {
-            mBackWaveAnimator = ValueAnimator.ofInt(0, getWidth());
-            mBackWaveAnimator.setDuration(backWaveDuration);
-            mBackWaveAnimator.setRepeatCount(ValueAnimator.INFINITE);
-            mBackWaveAnimator.setInterpolator(new LinearInterpolator());
-            mBackWaveAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    backWaveOffset = (int) animation.getAnimatedValue();
-                    postInvalidate();
-                }
-            });
-            mBackWaveAnimator.start();
+        if (null == mShapeMask || mShapeMask.getWidth() != width || mShapeMask.getHeight() != height) {
+            releaseShapeMask();
+            mShapeMask = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+            mShapeMaskCanvas = new Canvas(mShapeMask);
+        } else {
+            mShapeMask.eraseColor(Color.TRANSPARENT);
         }
+        if (drawMask) {
+            shapeMask.setBounds(0, 0, width, height);
+            shapeMask.draw(mShapeMaskCanvas);
+        } else {
+            mShapeMaskCanvas.drawPath(mShapePath, mShapeMaskPaint);
+        }
+        mShapeMaskShader = new BitmapShader(mShapeMask, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
     }
 
+    private void releaseShapeMask() {
+        if (null != mShapeMask) {
+            mShapeMask.recycle();
+            mShapeMask = null;
+            mShapeMaskCanvas = null;
+        }
+        mShapeMaskShader = null;
+    }
 
-    private Path getBorderShapePath() {
-//        Path path = new Path();
-//
-//        path.addCircle(getWidth() / 2, getHeight() / 2, getWidth() / 2, Path.Direction.CW);
+    public int getShape() {
+        return shape;
+    }
+
+    /**
+     * 设置裁剪的形状，{@link #SHAPE_NONE}、{@link #SHAPE_CIRCLE}或者{@link #SHAPE_ROUND_RECT}，
+     * 自定义的形状使用{@link #setShapePath(Path)}和{@link #setShapeMask(Drawable)}设置，
+     * 之后可以用{@link #SHAPE_PATH}和{@link #SHAPE_MASK}切换回来，所以setShape(getShape())总是可以调用
+     */
+    public void setShape(int shape) {
+        if (SHAPE_PATH == shape) {
+            if (!shapePathSet) {
+                throw new IllegalArgumentException("Call setShapePath before using SHAPE_PATH");
+            }
+        } else if (SHAPE_MASK == shape) {
+            if (null == shapeMask) {
+                throw new IllegalArgumentException("Call setShapeMask before using SHAPE_MASK");
+            }
+        } else if (SHAPE_NONE != shape && SHAPE_CIRCLE != shape && SHAPE_ROUND_RECT != shape) {
+            throw new IllegalArgumentException("unknown shape: " + shape);
+        }
+        this.shape = shape;
+        invalidateShape();
+    }
+
+    public float getShapeCornerRadius() {
+        return shapeCornerRadius;
+    }
 
-//        return path;
-        return null;
+    /**
+     * {@link #SHAPE_ROUND_RECT}的圆角半径，单位px
+     */
+    public void setShapeCornerRadius(float radius) {
+        shapeCornerRadius = Math.max(0, radius);
+        invalidateShape();
     }
 
-    private Bitmap getBorderShapeBitmap() {
-        Path shapePath = getBorderShapePath();
-        if (null == shapePath) {
-            return null;
+    /**
+     * 按任意路径裁剪，坐标相对于View，会复制一份，之后修改path不会影响View
+     */
+    public void setShapePath(Path path) {
+        shapePath.set(path);
+        shapePathSet = true;
+        shape = SHAPE_PATH;
+        invalidateShape();
+    }
+
+    /**
+     * 按drawable的透明度裁剪，drawable会被拉伸到View的大小，没有边界线。
+     * 遮罩只在设置和尺寸变化时画一次，drawable的内容变化后需要重新设置
+     */
+    public void setShapeMask(@Nullable Drawable mask) {
+        shapeMask = mask;
+        shape = null == mask ? SHAPE_NONE : SHAPE_MASK;
+        invalidateShape();
+    }
+
+    public int getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * {@link #RENDER_PATH}或者{@link #RENDER_TILE}
+     */
+    public void setRenderMode(int renderMode) {
+        if (RENDER_PATH != renderMode && RENDER_TILE != renderMode) {
+            throw new IllegalArgumentException("unknown render mode: " + renderMode);
+        }
+        this.renderMode = renderMode;
+        if (RENDER_TILE != renderMode) {
+            releaseGeometries();
         }
+        invalidate();
+    }
+
+    private void invalidateShape() {
+        mShapeDirty = true;
+        invalidate();
+    }
 
-        Bitmap bitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+    /**
+     * 所有波浪层，先添加的画在下面
+     */
+    public List<WaveLayer> getWaveLayers() {
+        return Collections.unmodifiableList(mLayers);
+    }
 
-        Canvas canvas = new Canvas(bitmap);
+    /**
+     * 替换所有波浪层，幅度和周期相同的层共用一份形状
+     */
+    public void setWaveLayers(List<WaveLayer> layers) {
+        mLayers.clear();
+        mLayers.addAll(layers);
+        onWaveLayersChanged();
+    }
 
-        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        canvas.drawPath(shapePath, paint);
+    public void addWaveLayer(WaveLayer layer) {
+        mLayers.add(layer);
+        onWaveLayersChanged();
+    }
 
-        return bitmap;
+    public void removeWaveLayer(WaveLayer layer) {
+        mLayers.remove(layer);
+        onWaveLayersChanged();
+    }
+
+    private void onWaveLayersChanged() {
+        invalidate();
+        initAnimation();
     }
 
     public long getMax() {
         return max;
     }
 
+    /**
+     * 可以在任意线程调用，水位在下一帧开始平滑地变化
+     */
     public void setMax(long max) {
         this.max = max;
-        postInvalidate();
+        postLevelUpdate();
     }
 
     public long getProgress() {
         return progress;
     }
 
+    /**
+     * 可以在任意线程调用，频繁调用时每一帧只取最新的值，水位在下一帧开始平滑地变化
+     */
     public void setProgress(long progress) {
         this.progress = progress;
-        postInvalidate();
+        postLevelUpdate();
+    }
+
+    public int getProgressSmoothTime() {
+        return progressSmoothTime;
+    }
+
+    /**
+     * 水位变化的平滑时间常数，单位ms，0表示直接跳到新的水位。只能在UI线程调用
+     */
+    public void setProgressSmoothTime(int millis) {
+        progressSmoothTime = Math.max(0, millis);
     }
 
 